@@ -0,0 +1,210 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: BatchProcessor.java
+ * Desc:
+ *
+ * Processes many images in one run, so JVM startup and JIT warm-up are paid once instead of once per image
+ * Work is split into three stages joined by bounded queues:
+ *   read: a few I/O threads decode input files
+ *   process: one thread per core builds and renders the quadtrees (Main.process)
+ *   write: a few I/O threads encode and write the outputs
+ * Reading and writing overlap with processing, and a full queue blocks the stage before it, so at most
+ * queueDepth images wait between two stages no matter how many files there are.
+ *
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+public class BatchProcessor {
+
+    public static final int IO_THREADS = 4; //threads each for reading and writing, mostly waiting on the disk
+
+    private Main.Options options; //what to do to each image
+    private int computeThreads; //threads building and rendering quadtrees
+    private int queueDepth; //images that can wait between two stages
+
+    /**
+     * one image on its way through the stages
+     */
+    private static class Item {
+        String inputFilename;
+        String outputFilename;
+        Image image; //set by read stage
+        List<Main.Output> outputs; //set by process stage
+
+        Item(String inputFilename, String outputFilename) {
+            this.inputFilename = inputFilename;
+            this.outputFilename = outputFilename;
+        }
+    }
+
+    private static final Item DONE = new Item("", ""); //put on a queue once per thread of the next stage when a stage ends
+
+    /**
+     * @param options flags to apply to every image
+     */
+    public BatchProcessor(Main.Options options) {
+        this(options, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param options flags to apply to every image
+     * @param computeThreads threads building and rendering quadtrees
+     */
+    public BatchProcessor(Main.Options options, int computeThreads) {
+        this.options = options;
+        this.computeThreads = computeThreads;
+        this.queueDepth = computeThreads;
+    }
+
+    /**
+     * @param path a directory, for every file in it, or a text file with one input filename per line
+     * @return input filenames, sorted for a directory, in order for a list
+     * @throws IOException
+     */
+    public static List<String> listInputs(String path) throws IOException {
+        Path p = Paths.get(path);
+        if (Files.isDirectory(p)) {
+            try (Stream<Path> files = Files.list(p)) {
+                return files.filter(Files::isRegularFile).map(Path::toString).sorted().collect(Collectors.toList());
+            }
+        }
+        List<String> inputs = new ArrayList<String>();
+        for (String line : Files.readAllLines(p)) {
+            if (!line.isBlank()) {
+                inputs.add(line.trim());
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * process every input, writing outputs named after the input file into outputDir. A file that can't be read or
+     * written is reported and skipped, the others are still processed
+     * @param inputs input filenames
+     * @param outputDir directory for outputs, created if missing
+     * @return number of files that failed
+     * @throws IOException if outputDir can't be created
+     */
+    @SuppressWarnings("try")
+    public int run(List<String> inputs, String outputDir) throws IOException {
+        Files.createDirectories(Paths.get(outputDir));
+        BlockingQueue<Item> decoded = new ArrayBlockingQueue<Item>(queueDepth);
+        BlockingQueue<Item> processed = new ArrayBlockingQueue<Item>(queueDepth);
+        AtomicInteger next = new AtomicInteger(); //next input to read
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger readersLeft = new AtomicInteger(IO_THREADS);
+        AtomicInteger processorsLeft = new AtomicInteger(computeThreads);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < IO_THREADS; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (int k = next.getAndIncrement(); k < inputs.size(); k = next.getAndIncrement()) {
+                        String input = inputs.get(k);
+                        Item item = new Item(input, Paths.get(outputDir, Paths.get(input).getFileName().toString()).toString());
+                        try {
+                            try (Instrumentation.Phase phase = options.instrumentation.start("decode")) {
+                                item.image = Main.readImage(input);
+                            }
+                            decoded.put(item);
+                        }
+                        catch (IOException | RuntimeException | OutOfMemoryError e) {
+                            fail(failed, "Problem reading file " + input + ": " + e);
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finally { //even if this thread dies, the next stage has to hear it is done or the run never ends
+                    endStage(readersLeft, decoded, computeThreads);
+                }
+            }, "batch-read-" + t));
+        }
+        for (int t = 0; t < computeThreads; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (Item item = decoded.take(); item != DONE; item = decoded.take()) {
+                        try {
+                            item.outputs = Main.process(item.image, item.outputFilename, options);
+                            item.image = null; //outputs that render from a tree still hold the input through it until written
+                            processed.put(item);
+                        }
+                        catch (RuntimeException | OutOfMemoryError e) {
+                            fail(failed, "Problem processing file " + item.inputFilename + ": " + e);
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    endStage(processorsLeft, processed, IO_THREADS);
+                }
+            }, "batch-process-" + t));
+        }
+        for (int t = 0; t < IO_THREADS; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (Item item = processed.take(); item != DONE; item = processed.take()) {
+                        try {
+                            Main.write(item.outputs, options);
+                        }
+                        catch (IOException | RuntimeException | OutOfMemoryError e) {
+                            fail(failed, "Problem writing file " + item.outputFilename + ": " + e);
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "batch-write-" + t));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            Thread.currentThread().interrupt();
+        }
+        return failed.get();
+    }
+
+    /**
+     * called once by every thread of a stage as it ends, the last one tells each thread of the next stage to stop
+     * @param threadsLeft threads of this stage still running
+     * @param next queue into the next stage
+     * @param nextThreads threads of the next stage
+     */
+    private static void endStage(AtomicInteger threadsLeft, BlockingQueue<Item> next, int nextThreads) {
+        if (threadsLeft.decrementAndGet() != 0) {
+            return;
+        }
+        try {
+            for (int k = 0; k < nextThreads; k++) {
+                next.put(DONE);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void fail(AtomicInteger failed, String message) {
+        failed.incrementAndGet();
+        System.out.println(message);
+    }
+}
@@ -0,0 +1,275 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: Convolution.java
+ * Desc:
+ *
+ * One 3x3 convolution engine for every filter in the program (edge detection in Image, Quadtree and LinearQuadtree)
+ * Rows are unpacked once into red/green/blue int planes and slid down the image three at a time, and the filter
+ * is looked at once up front to pick the cheapest way to apply it:
+ *   integer weights (like Main.EDGE_DETECTION_FILTER): whole sum done in int math
+ *   anything else: 9 double multiplies per channel, added in the same order for every pixel
+ * Big regions are split into bands of rows that run in parallel. Unpacking, packing and the integer filter run
+ * through Kernels, so they use the Vector API when it is there.
+ * Single pixels can also be filtered straight from the packed pixels (applyPixel), for Quadtree.edgeDetectionSparse.
+ *
+ * Output channel = min(|sum of weight * neighbor|, 255). Only pixels with a full 3x3 neighborhood are written.
+ *
+ */
+
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+public class Convolution {
+
+    public static final int TILE_ROWS = 64; //rows per parallel band
+    public static final int PARALLEL_PIXELS = 256 * 256; //regions smaller than this run on the calling thread
+
+    private double[] weights = new double[9]; //weights[row * 3 + col] of the neighborhood
+    private int[] intWeights; //same as weights, null unless every weight is a whole number and no sum can overflow
+    private Kernels kernels = Kernels.get();
+
+    /**
+     * @param filter 3x3 weights indexed [col][row] of the neighborhood, as in Main.EDGE_DETECTION_FILTER
+     */
+    public Convolution(double[][] filter) {
+        boolean integer = true;
+        double largestSum = 0; //sum of |weight| * 255, the biggest a channel's sum can get
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                weights[row * 3 + col] = filter[col][row];
+                integer &= (filter[col][row] == Math.rint(filter[col][row]));
+                largestSum += Math.abs(filter[col][row]) * 255;
+            }
+        }
+        if (integer && largestSum < Integer.MAX_VALUE) {
+            intWeights = new int[9];
+            for (int k = 0; k < 9; k++) {
+                intWeights[k] = (int) weights[k];
+            }
+        }
+    }
+
+    public boolean isInteger() {
+        return intWeights != null;
+    }
+
+    /**
+     * @return true if the weights add up to 0, so any flat area filters to black
+     */
+    public boolean isZeroSum() {
+        double sum = 0;
+        for (int k = 0; k < 9; k++) {
+            sum += weights[k];
+        }
+        return Math.abs(sum) < 1e-9;
+    }
+
+    /**
+     * @param rgb packed color of a flat area
+     * @return packed result of filtering any pixel whose whole neighborhood is rgb
+     */
+    public int applyFlat(int rgb) {
+        int[] flat = new int[9];
+        Arrays.fill(flat, rgb);
+        return applyPixel(flat, 3, 3, 1, 1); //same sums in the same order as a real neighborhood
+    }
+
+    /**
+     * filter one pixel straight from packed pixels, for scattered pixels where unpacking rows would cost more
+     * @param src packed pixels to read neighborhood from
+     * @param width
+     * @param height
+     * @param i row of pixel
+     * @param j col of pixel
+     * @return packed filtered pixel, black if (i, j) has no full neighborhood
+     */
+    public int applyPixel(int[] src, int width, int height, int i, int j) {
+        if (i < 1 || j < 1 || i > height - 2 || j > width - 2) {
+            return 0;
+        }
+        int at = (i - 1) * width + j - 1; //top left of neighborhood
+        if (intWeights != null) {
+            int r = 0;
+            int g = 0;
+            int b = 0;
+            for (int k = 0; k < 9; k++) {
+                int rgb = src[at + (k / 3) * width + (k % 3)];
+                r += MyColor.red(rgb) * intWeights[k];
+                g += MyColor.green(rgb) * intWeights[k];
+                b += MyColor.blue(rgb) * intWeights[k];
+            }
+            return MyColor.pack(Math.min(Math.abs(r), 255), Math.min(Math.abs(g), 255), Math.min(Math.abs(b), 255));
+        }
+        double r = 0;
+        double g = 0;
+        double b = 0;
+        for (int k = 0; k < 9; k++) {
+            int rgb = src[at + (k / 3) * width + (k % 3)];
+            r += MyColor.red(rgb) * weights[k];
+            g += MyColor.green(rgb) * weights[k];
+            b += MyColor.blue(rgb) * weights[k];
+        }
+        return MyColor.pack((int) Math.min(Math.abs(r), 255), (int) Math.min(Math.abs(g), 255), (int) Math.min(Math.abs(b), 255));
+    }
+
+    /**
+     * filter a whole image
+     * @param src packed pixels to filter
+     * @param width
+     * @param height
+     * @return packed filtered pixels, black on the one pixel border
+     */
+    public int[] apply(int[] src, int width, int height) {
+        int[] dest = new int[src.length];
+        apply(src, dest, width, height, 0, 0, height - 1, width - 1);
+        return dest;
+    }
+
+    /**
+     * filter the inclusive rectangle (startI, startJ) to (endI, endJ), pixels outside it are not touched
+     * @param src packed pixels to read neighborhoods from
+     * @param dest packed pixels to write to, must not be src
+     * @param width width of both images
+     * @param height height of both images
+     */
+    public void apply(int[] src, int[] dest, int width, int height, int startI, int startJ, int endI, int endJ) {
+        //only pixels with a full neighborhood
+        int top = Math.max(startI, 1);
+        int left = Math.max(startJ, 1);
+        int bottom = Math.min(endI, height - 2);
+        int right = Math.min(endJ, width - 2);
+        if (top > bottom || left > right) {
+            return;
+        }
+        long pixels = (long) (bottom - top + 1) * (right - left + 1);
+        if (pixels < PARALLEL_PIXELS) {
+            applyRows(src, dest, width, top, bottom, left, right, null, null, null);
+            return;
+        }
+        int bands = (bottom - top) / TILE_ROWS + 1;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int bandTop = top + band * TILE_ROWS;
+            applyRows(src, dest, width, bandTop, Math.min(bandTop + TILE_ROWS - 1, bottom), left, right, null, null, null);
+        });
+    }
+
+    /**
+     * filter a whole image in place. Each row is unpacked before it is overwritten, so a few rows are kept aside
+     * instead of a second image
+     * @param pixels packed pixels to filter, bits above 0xFFFFFF are ignored by the filter so callers can keep
+     * marks there
+     * @param width
+     * @param height
+     * @param finish gets each pixel as it was (marks included) and its filtered value (black on the one pixel
+     * border), returns what to store
+     */
+    public void applyInPlace(int[] pixels, int width, int height, IntBinaryOperator finish) {
+        int top = 1;
+        int left = 1;
+        int bottom = height - 2;
+        int right = width - 2;
+        if (top <= bottom && left <= right) {
+            long count = (long) (bottom - top + 1) * (right - left + 1);
+            int bands = (count < PARALLEL_PIXELS) ? 1 : (bottom - top) / TILE_ROWS + 1;
+            int bandRows = (bands == 1) ? bottom - top + 1 : TILE_ROWS;
+            int n = right - left + 3;
+            //rows just outside a band are written by the bands next to it, keep them as they are now
+            int[][][] aboveBand = new int[bands][][];
+            int[][][] belowBand = new int[bands][][];
+            for (int band = 0; band < bands; band++) {
+                int bandTop = top + band * bandRows;
+                int bandBottom = Math.min(bandTop + bandRows - 1, bottom);
+                aboveBand[band] = new int[3][n];
+                belowBand[band] = new int[3][n];
+                kernels.unpack(pixels, (bandTop - 1) * width + left - 1, aboveBand[band][0], aboveBand[band][1], aboveBand[band][2]);
+                kernels.unpack(pixels, (bandBottom + 1) * width + left - 1, belowBand[band][0], belowBand[band][1], belowBand[band][2]);
+            }
+            IntStream bandStream = IntStream.range(0, bands);
+            (bands > 1 ? bandStream.parallel() : bandStream).forEach(band -> {
+                int bandTop = top + band * bandRows;
+                applyRows(pixels, pixels, width, bandTop, Math.min(bandTop + bandRows - 1, bottom), left, right, aboveBand[band], belowBand[band], finish);
+            });
+        }
+        //the border has no full neighborhood, it was only read
+        for (int i = 0; i < height; i += Math.max(height - 1, 1)) {
+            for (int p = i * width; p < (i + 1) * width; p++) {
+                pixels[p] = finish.applyAsInt(pixels[p], 0);
+            }
+        }
+        for (int i = 1; i < height - 1; i++) {
+            for (int j = 0; j < width; j += Math.max(width - 1, 1)) {
+                pixels[i * width + j] = finish.applyAsInt(pixels[i * width + j], 0);
+            }
+        }
+    }
+
+    /**
+     * filter rows top to bottom, columns left to right, all of which have full neighborhoods. dest can be src: rows
+     * are unpacked before they are written
+     * @param firstAbove row top - 1 unpacked from left - 1, null to unpack it from src
+     * @param lastBelow row bottom + 1 unpacked from left - 1, null to unpack it from src
+     * @param finish null to store filtered pixels, else applied to the pixel in dest and its filtered value
+     */
+    private void applyRows(int[] src, int[] dest, int width, int top, int bottom, int left, int right,
+            int[][] firstAbove, int[][] lastBelow, IntBinaryOperator finish) {
+        int n = right - left + 3; //columns of each plane, one extra on each side
+        int[][] above = new int[3][n]; //red, green, blue of row i - 1
+        int[][] here = new int[3][n]; //row i
+        int[][] below = new int[3][n]; //row i + 1
+        int[][] out = new int[3][n - 2]; //filtered red, green, blue of row i
+        int[] packed = (finish == null) ? null : new int[n - 2]; //filtered row i, before finish
+
+        if (firstAbove != null) {
+            above = firstAbove;
+        }
+        else {
+            kernels.unpack(src, (top - 1) * width + left - 1, above[0], above[1], above[2]);
+        }
+        kernels.unpack(src, top * width + left - 1, here[0], here[1], here[2]);
+
+        for (int i = top; i <= bottom; i++) {
+            if (i == bottom && lastBelow != null) {
+                below = lastBelow;
+            }
+            else {
+                kernels.unpack(src, (i + 1) * width + left - 1, below[0], below[1], below[2]);
+            }
+            for (int c = 0; c < 3; c++) {
+                if (intWeights != null) {
+                    kernels.filterInt(above[c], here[c], below[c], out[c], intWeights);
+                }
+                else {
+                    filterDouble(above[c], here[c], below[c], out[c]);
+                }
+            }
+            if (finish == null) {
+                kernels.pack(out[0], out[1], out[2], dest, i * width + left, n - 2);
+            }
+            else {
+                kernels.pack(out[0], out[1], out[2], packed, 0, n - 2);
+                int at = i * width + left;
+                for (int x = 0; x < n - 2; x++) {
+                    dest[at + x] = finish.applyAsInt(dest[at + x], packed[x]);
+                }
+            }
+
+            //slide window down one row, reusing the oldest arrays for the next row
+            int[][] oldest = above;
+            above = here;
+            here = below;
+            below = oldest;
+        }
+    }
+
+    private void filterDouble(int[] a, int[] h, int[] b, int[] out) {
+        double w1 = weights[0], w2 = weights[1], w3 = weights[2];
+        double w4 = weights[3], w5 = weights[4], w6 = weights[5];
+        double w7 = weights[6], w8 = weights[7], w9 = weights[8];
+        for (int x = 0; x < out.length; x++) {
+            double sum = a[x] * w1 + a[x + 1] * w2 + a[x + 2] * w3
+                + h[x] * w4 + h[x + 1] * w5 + h[x + 2] * w6
+                + b[x] * w7 + b[x + 1] * w8 + b[x + 2] * w9;
+            out[x] = (int) Math.min(Math.abs(sum), 255);
+        }
+    }
+}
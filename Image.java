@@ -1,27 +1,38 @@
-/* Name: Clara Fee, Julia Rieger 
+/* Name: Clara Fee, Julia Rieger
  * File: Image.java
- * Desc: 
- * 
+ * Desc:
+ *
  * Class to store one image with all RGB values
- * 
+ * Pixels are packed as 0xRRGGBB ints (see MyColor.pack) in one row-major array, pixel (i, j) is pixels[i * width + j]
+ *
  */
 
-
+import java.util.*;
+import java.util.function.*;
 
 public class Image {
-    
+
     int width;
     int height;
-    MyColor[][] colorArray;
+    int[] pixels; //packed 0xRRGGBB, row-major
     String filename;
 
-    public Image(MyColor[][] colorArray, int width, int height) {
-        this.colorArray = colorArray;
+    public Image(int[] pixels, int width, int height) {
+        this.pixels = pixels;
         this.width = width;
         this.height = height;
         this.filename = "";
     }
 
+    /**
+     * Create a black image
+     * @param width
+     * @param height
+     */
+    public Image(int width, int height) {
+        this(new int[width * height], width, height);
+    }
+
     public void setFilename(String newName) {
         this.filename = newName;
     }
@@ -29,8 +40,8 @@ public class Image {
     public String getFilename() {
         return this.filename;
     }
-    public MyColor[][] getColorArray() {
-        return this.colorArray;
+    public int[] getPixels() {
+        return this.pixels;
     }
     public int getHeight() {
         return this.height;
@@ -43,97 +54,80 @@ public class Image {
         return this.width * this.height;
     }
 
-    public MyColor getStartPixel() {
-        return this.colorArray[0][0];
+    public int getRGB(int i, int j) {
+        return this.pixels[i * width + j];
     }
-    public MyColor getEndPixel() {
-        return this.colorArray[width-1][height-1];
+    public void setRGB(int i, int j, int rgb) {
+        this.pixels[i * width + j] = rgb;
     }
-
-    public void shade(double shadeFactor) throws IllegalArgumentException { 
-        if (shadeFactor == -1) {
-            for (int i = 0; i < this.getHeight(); i++) {
-                for (int j = 0; j < this.getWidth(); j++) {
-                    colorArray[i][j].negative();
-                }
-            }
-        }
-        else {
-            if ((shadeFactor < 0) || (shadeFactor > 1)) {
-                throw new IllegalArgumentException("shadeFactor must be between 0 and 1!");
-            } 
-            for (int i = 0; i < this.getHeight(); i++) {
-                for (int j = 0; j < this.getWidth(); j++) {
-                    colorArray[i][j].shade(shadeFactor);
-                }
-            } 
-        }   
+    public MyColor getColor(int i, int j) {
+        return new MyColor(getRed(i, j), getGreen(i, j), getBlue(i, j), i, j);
+    }
+    public int getRed(int i, int j) {
+        return MyColor.red(this.pixels[i * width + j]);
+    }
+    public int getGreen(int i, int j) {
+        return MyColor.green(this.pixels[i * width + j]);
+    }
+    public int getBlue(int i, int j) {
+        return MyColor.blue(this.pixels[i * width + j]);
     }
 
-    
-    public Image edgeDetection(double[][] edgeDetectionFilter, int startI, int startJ, int endI, int endJ) {
-
-        double w1 = edgeDetectionFilter[0][0];
-        double w2 = edgeDetectionFilter[1][0];
-        double w3 = edgeDetectionFilter[2][0];
-        double w4 = edgeDetectionFilter[0][1];
-        double w5 = edgeDetectionFilter[1][1];
-        double w6 = edgeDetectionFilter[2][1];
-        double w7 = edgeDetectionFilter[0][2];
-        double w8 = edgeDetectionFilter[1][2];
-        double w9 = edgeDetectionFilter[2][2];
-
-        double newRed = 0;
-        double newBlue = 0;
-        double newGreen = 0;
-
-        MyColor bottomLeft;
-        MyColor left;
-        MyColor topLeft;
-        MyColor bottom;
-        MyColor center;
-        MyColor top;
-        MyColor bottomRight;
-        MyColor right;
-        MyColor topRight;
+    /**
+     * copy row i into dest starting at offset
+     */
+    public void getRow(int i, int[] dest, int offset) {
+        System.arraycopy(this.pixels, i * width, dest, offset, width);
+    }
+    /**
+     * copy width pixels from src starting at offset into row i
+     */
+    public void setRow(int i, int[] src, int offset) {
+        System.arraycopy(src, offset, this.pixels, i * width, width);
+    }
 
-        MyColor[][] colorArray = this.getColorArray();
-        MyColor[][] returnThisArr = new MyColor[colorArray.length][colorArray[0].length];
+    /**
+     * set every pixel in the inclusive rectangle (startI, startJ) to (endI, endJ) to one color
+     */
+    public void fillRect(int startI, int startJ, int endI, int endJ, int rgb) {
+        for (int i = startI; i <= endI; i++) {
+            Arrays.fill(this.pixels, i * width + startJ, i * width + endJ + 1, rgb);
+        }
+    }
 
-        for (int i = startI; i < endI; i++) {
-            for (int j = startJ; j < endJ; j++) {
-                if (((i - 1) > startI) && ((i + 1) < endI) && ((j - 1) > startJ) && ((j + 1) < endJ)) {
-                    
-                    topLeft = colorArray[i - 1][j - 1];
-                    left = colorArray[i][j - 1];
-                    bottomLeft = colorArray[i + 1][j - 1];
-                    top = colorArray[i - 1][j];
-                    center = colorArray[i][j];
-                    bottom = colorArray[i + 1][j];
-                    topRight = colorArray[i - 1][j + 1];
-                    right = colorArray[i][j + 1];
-                    bottomRight = colorArray[i + 1][j + 1];
-                     
-                    newRed = Math.abs((topLeft.getR() * w1) + (top.getR() * w2) + (topRight.getR() * w3) + (left.getR() * w4) + (center.getR() * w5) + (right.getR() * w6) + (bottomLeft.getR() * w7) + (bottom.getR() * w8) + (bottomRight.getR() * w9));
+    /**
+     * shade or invert every pixel in place
+     * @param shadeFactor -1 to invert, or between 0 and 1
+     * @throws IllegalArgumentException if shadeFactor is not -1 or between 0 and 1
+     */
+    public void shade(double shadeFactor) throws IllegalArgumentException {
+        MyColor.shader(shadeFactor); //throws if out of range
+        Kernels.get().shade(this.pixels, 0, this.pixels.length, shadeFactor);
+    }
 
-                    newGreen = Math.abs((topLeft.getG() * w1) + (top.getG() * w2) + (topRight.getG() * w3) + (left.getG() * w4) + (center.getG() * w5) + (right.getG() * w6) + (bottomLeft.getG() * w7) + (bottom.getG() * w8) + (bottomRight.getG() * w9));
+    /**
+     * replace every pixel with op applied to it
+     * @param op operation on packed colors, e.g. MyColor::greyScale
+     */
+    public void transform(IntUnaryOperator op) {
+        for (int p = 0; p < this.pixels.length; p++) {
+            pixels[p] = op.applyAsInt(pixels[p]);
+        }
+    }
 
-                    newBlue = Math.abs((topLeft.getB() * w1) + (top.getB() * w2) + (topRight.getB() * w3) + (left.getB() * w4) + (center.getB() * w5) + (right.getB() * w6) + (bottomLeft.getB() * w7) + (bottom.getB() * w8) + (bottomRight.getB() * w9));
 
-                    if (newRed > 255) {
-                        newRed = 255;
-                    }
-                    if (newGreen > 255) {
-                        newGreen = 255;
-                    }
-                    if (newBlue > 255) {
-                        newBlue = 255;
-                    }
-                }
-                MyColor newColor = new MyColor((int) newRed, (int) newGreen, (int) newBlue, i, j);
-                returnThisArr[i][j] = newColor;
-            }
-        }
-        return new Image(returnThisArr, returnThisArr.length, returnThisArr[0].length);
+    /**
+     * filter the pixels of a region whose whole 3x3 neighborhood is inside it, everything else comes back black
+     * @param edgeDetectionFilter 3x3 weights indexed [col][row] of the neighborhood
+     * @param startI first row of region
+     * @param startJ first col of region
+     * @param endI row after region
+     * @param endJ col after region
+     * @return new filtered Image
+     */
+    public Image edgeDetection(double[][] edgeDetectionFilter, int startI, int startJ, int endI, int endJ) {
+        int[] returnThisArr = new int[this.pixels.length];
+        new Convolution(edgeDetectionFilter).apply(this.pixels, returnThisArr, this.width, this.height, startI + 1, startJ + 1, endI - 2, endJ - 2);
+        return new Image(returnThisArr, this.width, this.height);
     }
-}
\ No newline at end of file
+}
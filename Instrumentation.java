@@ -0,0 +1,209 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: Instrumentation.java
+ * Desc:
+ *
+ * Records where a run spends its time and memory, and what shape its quadtrees have
+ * Work is timed in phases (decode, build, render, filter, encode), each with its wall time and the bytes it
+ * allocated. Every phase and every tree is also emitted as a JFR event (quadtree.Phase, quadtree.Tree), so a
+ * recording (java -XX:StartFlightRecording ...) shows them next to GC and CPU samples, and totals can be
+ * written at the end of a run as a JSON summary.
+ *
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import jdk.jfr.*;
+
+public class Instrumentation {
+
+    public static final String[] PHASES = {"decode", "build", "render", "filter", "encode"};
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private boolean perThread; //count only the calling thread's allocation, see constructor
+    private boolean summary; //keep totals and tree stats for toJson
+    private long[] counts = new long[PHASES.length]; //times each phase ran
+    private long[] nanos = new long[PHASES.length]; //wall time of each phase
+    private long[] bytes = new long[PHASES.length]; //allocation of each phase
+    private List<Quadtree.Stats> trees = new ArrayList<Quadtree.Stats>(); //stats of every tree recorded
+
+    @Name("quadtree.Phase")
+    @Label("Quadtree Phase")
+    @Category("Quadtree")
+    static class PhaseEvent extends jdk.jfr.Event {
+        @Label("Phase")
+        String phase;
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("quadtree.Tree")
+    @Label("Quadtree Tree")
+    @Category("Quadtree")
+    static class TreeEvent extends jdk.jfr.Event {
+        @Label("Width")
+        int width;
+        @Label("Height")
+        int height;
+        @Label("Depth")
+        int depth;
+        @Label("Nodes")
+        int nodes;
+        @Label("Leaves")
+        int leaves;
+        @Label("Leaf Sizes")
+        @Description("side:count of leaves by longer side, rounded down to a power of 2")
+        String leafSizes;
+    }
+
+    /**
+     * one running phase, recorded when closed
+     */
+    public class Phase implements AutoCloseable {
+
+        private int phase; //index into PHASES
+        private long startNanos;
+        private long startBytes;
+        private PhaseEvent event = new PhaseEvent();
+
+        private Phase(int phase) {
+            this.phase = phase;
+            this.startBytes = allocatedBytes();
+            this.event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        public void close() {
+            long elapsed = System.nanoTime() - startNanos;
+            long allocated = allocatedBytes() - startBytes;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = PHASES[phase];
+                event.allocated = allocated;
+                event.commit();
+            }
+            if (summary) {
+                synchronized (Instrumentation.this) {
+                    counts[phase]++;
+                    nanos[phase] += elapsed;
+                    bytes[phase] += allocated;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param perThread true to count allocation on the calling thread only, right when phases on different threads
+     * overlap (batch mode); false to count every thread, right when a phase forks work (parallel tree builds)
+     * @param summary true to keep totals for toJson, false to only emit JFR events
+     */
+    public Instrumentation(boolean perThread, boolean summary) {
+        this.perThread = perThread;
+        this.summary = summary;
+    }
+
+    /**
+     * start timing a phase, use in try-with-resources. The body never references the Phase, which javac -Xlint
+     * reports as [try], so methods timing phases carry @SuppressWarnings("try")
+     * @param phase one of PHASES
+     * @return Phase to close when the phase ends
+     * @throws IllegalArgumentException if phase is not in PHASES
+     */
+    public Phase start(String phase) throws IllegalArgumentException {
+        for (int k = 0; k < PHASES.length; k++) {
+            if (PHASES[k].equals(phase)) {
+                return new Phase(k);
+            }
+        }
+        throw new IllegalArgumentException("unknown phase " + phase);
+    }
+
+    /**
+     * record the shape of a built tree. Walks the whole tree, so does nothing unless a summary is kept or a JFR
+     * recording wants quadtree.Tree events
+     * @param tree built tree
+     */
+    public void recordTree(Quadtree<?> tree) {
+        TreeEvent event = new TreeEvent();
+        if (!summary && !event.isEnabled()) {
+            return;
+        }
+        Quadtree.Stats stats = tree.getStats();
+        if (event.shouldCommit()) {
+            event.width = tree.getWidth();
+            event.height = tree.getHeight();
+            event.depth = stats.depth;
+            event.nodes = stats.nodes;
+            event.leaves = stats.leaves;
+            StringBuilder sizes = new StringBuilder();
+            for (int k = 0; k < stats.leafSizes.length; k++) {
+                if (stats.leafSizes[k] > 0) {
+                    sizes.append(sizes.length() == 0 ? "" : ",").append(1 << k).append(':').append(stats.leafSizes[k]);
+                }
+            }
+            event.leafSizes = sizes.toString();
+            event.commit();
+        }
+        if (summary) {
+            synchronized (this) {
+                trees.add(stats);
+            }
+        }
+    }
+
+    private long allocatedBytes() {
+        if (perThread) {
+            return THREADS.getCurrentThreadAllocatedBytes();
+        }
+        long total = 0;
+        for (long b : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (b > 0) { //-1 for threads that ended in between
+                total += b;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return kernels in use, totals of every phase and stats of every tree as one JSON object
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"kernels\": \"");
+        json.append(Kernels.get().getName()).append("\",\n  \"phases\": {");
+        for (int k = 0; k < PHASES.length; k++) {
+            json.append(k == 0 ? "\n" : ",\n");
+            json.append("    \"").append(PHASES[k]).append("\": {\"count\": ").append(counts[k]);
+            json.append(", \"nanos\": ").append(nanos[k]).append(", \"bytes\": ").append(bytes[k]).append('}');
+        }
+        json.append("\n  },\n  \"trees\": [");
+        for (int t = 0; t < trees.size(); t++) {
+            Quadtree.Stats stats = trees.get(t);
+            json.append(t == 0 ? "\n" : ",\n");
+            json.append("    {\"depth\": ").append(stats.depth).append(", \"nodes\": ").append(stats.nodes);
+            json.append(", \"leaves\": ").append(stats.leaves).append(", \"leafSizes\": {");
+            boolean first = true;
+            for (int k = 0; k < stats.leafSizes.length; k++) {
+                if (stats.leafSizes[k] > 0) {
+                    json.append(first ? "" : ", ").append('"').append(1 << k).append("\": ").append(stats.leafSizes[k]);
+                    first = false;
+                }
+            }
+            json.append("}}");
+        }
+        json.append(trees.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * write toJson to a file
+     * @param filename destination file
+     * @throws IOException
+     */
+    public void writeSummary(String filename) throws IOException {
+        try (Writer out = new FileWriter(filename)) {
+            out.write(toJson());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: Kernels.java
+ * Desc:
+ *
+ * The per-pixel loops of the program (splitting packed pixels into channel planes and back, the integer 3x3
+ * filter, shading), written once as plain loops here and once with the Vector API in VectorKernels
+ * get() picks one when the class is first used: VectorKernels if the JVM was started with
+ * --add-modules jdk.incubator.vector (and -Dquadtree.vector=false was not given), these plain loops otherwise.
+ * Both give exactly the same pixels.
+ *
+ */
+
+public class Kernels {
+
+    private static final Kernels KERNELS = choose(); //chosen once, at startup
+
+    /**
+     * @return VectorKernels if the Vector API can be used, plain Kernels if not
+     */
+    public static Kernels get() {
+        return KERNELS;
+    }
+
+    private static Kernels choose() {
+        if (!Boolean.parseBoolean(System.getProperty("quadtree.vector", "true"))) {
+            return new Kernels();
+        }
+        try {
+            //by name, so this class still loads when jdk.incubator.vector is missing
+            return (Kernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return new Kernels();
+        }
+    }
+
+    /**
+     * @return which loops are in use, for -s summaries
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * split red.length packed pixels of src, from index at, into red, green and blue planes
+     */
+    public void unpack(int[] src, int at, int[] red, int[] green, int[] blue) {
+        for (int x = 0; x < red.length; x++) {
+            int rgb = src[at + x];
+            red[x] = MyColor.red(rgb);
+            green[x] = MyColor.green(rgb);
+            blue[x] = MyColor.blue(rgb);
+        }
+    }
+
+    /**
+     * pack n pixels of red, green and blue planes into dest from index at
+     */
+    public void pack(int[] red, int[] green, int[] blue, int[] dest, int at, int n) {
+        for (int x = 0; x < n; x++) {
+            dest[at + x] = MyColor.pack(red[x], green[x], blue[x]);
+        }
+    }
+
+    /**
+     * one channel of one row of a 3x3 integer filter, out[x] = min(|sum of weight * neighbor|, 255)
+     * @param a channel of row above, out.length + 2 long
+     * @param h channel of this row
+     * @param b channel of row below
+     * @param out filtered channel
+     * @param w weights[row * 3 + col] of the neighborhood
+     */
+    public void filterInt(int[] a, int[] h, int[] b, int[] out, int[] w) {
+        int w1 = w[0], w2 = w[1], w3 = w[2];
+        int w4 = w[3], w5 = w[4], w6 = w[5];
+        int w7 = w[6], w8 = w[7], w9 = w[8];
+        for (int x = 0; x < out.length; x++) {
+            int sum = a[x] * w1 + a[x + 1] * w2 + a[x + 2] * w3
+                + h[x] * w4 + h[x + 1] * w5 + h[x + 2] * w6
+                + b[x] * w7 + b[x + 1] * w8 + b[x + 2] * w9;
+            out[x] = Math.min(Math.abs(sum), 255);
+        }
+    }
+
+    /**
+     * shade packed pixels from index from to index to (exclusive) in place, same as MyColor.shader(shadeFactor)
+     * @param shadeFactor -1 to invert, or between 0 and 1
+     */
+    public void shade(int[] pixels, int from, int to, double shadeFactor) {
+        if (shadeFactor == -1) {
+            for (int p = from; p < to; p++) {
+                pixels[p] = MyColor.negative(pixels[p]);
+            }
+            return;
+        }
+        for (int p = from; p < to; p++) {
+            pixels[p] = MyColor.shade(pixels[p], shadeFactor);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: LinearQuadtree.java
+ * Desc:
+ *
+ * Flat (linear) quadtree holding only leaves, in Morton (Z-order) order, in primitive arrays
+ * Each leaf is a level, a packed mean color and an error, 9 bytes with no object header or child pointers.
+ * A leaf's Morton code (bits of i and j interleaved, j in the low bit) is never stored: in Z-order every leaf starts
+ * where the one before it ends, so codes come from adding up leaf areas while walking the arrays.
+ *
+ * Same splitting rule and same render/edge detection output as Quadtree, for square images with power of 2 sides.
+ *
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+public class LinearQuadtree {
+
+    private int side; //width and height of image, a power of 2
+    private double threshold; //threshold for compression, notes in README
+    private int numLeaves; //number of leaves in tree
+    private byte[] levels; //depth of each leaf, 0 is the whole image, leaf is (side >> level) pixels wide
+    private int[] colors; //packed mean color of each leaf
+    private float[] errors; //mean squared error of each leaf
+    public final int COMPRESSION_CONSTANT = 1000; //constant with which to divide meanSquaredError by to compare to threshold
+    public final int EDGE_DETECTION_CONSTANT = 50; //threshold of when to fill in black for edge detection, change based on image dimensions
+
+    /**
+     * Build a linear quadtree of an image
+     * @param image square image with sides a power of 2
+     * @param threshold threshold for compression
+     * @throws IllegalArgumentException if image is not square with power of 2 sides
+     */
+    public LinearQuadtree(Image image, double threshold) throws IllegalArgumentException {
+        if (image.getWidth() != image.getHeight() || Integer.bitCount(image.getWidth()) != 1) {
+            throw new IllegalArgumentException("LinearQuadtree needs a square image with sides a power of 2!");
+        }
+        this.side = image.getWidth();
+        this.threshold = threshold;
+        this.levels = new byte[16];
+        this.colors = new int[16];
+        this.errors = new float[16];
+        build(new SummedAreaTable(image), 0, 0, 0);
+        //trim to size
+        this.levels = Arrays.copyOf(levels, numLeaves);
+        this.colors = Arrays.copyOf(colors, numLeaves);
+        this.errors = Arrays.copyOf(errors, numLeaves);
+    }
+
+    /**
+     * recursively divides the quadrant at (i, j) of the given level, appending leaves in Z-order (NW, NE, SW, SE)
+     */
+    private void build(SummedAreaTable table, int i, int j, int level) {
+        int size = side >> level;
+        int color = table.getMeanColor(i, j, i + size - 1, j + size - 1);
+        double error = (size == 1) ? 0 : table.getMeanSquaredError(i, j, i + size - 1, j + size - 1, color);
+        if (size > 1 && error/COMPRESSION_CONSTANT > threshold) {
+            int half = size / 2;
+            build(table, i, j, level + 1);
+            build(table, i, j + half, level + 1);
+            build(table, i + half, j, level + 1);
+            build(table, i + half, j + half, level + 1);
+        }
+        else {
+            addLeaf(level, color, error);
+        }
+    }
+
+    private void addLeaf(int level, int color, double error) {
+        if (numLeaves == levels.length) {
+            levels = Arrays.copyOf(levels, numLeaves * 2);
+            colors = Arrays.copyOf(colors, numLeaves * 2);
+            errors = Arrays.copyOf(errors, numLeaves * 2);
+        }
+        levels[numLeaves] = (byte) level;
+        colors[numLeaves] = color;
+        errors[numLeaves] = (float) error;
+        numLeaves++;
+    }
+
+    public int getLeafCount() {
+        return this.numLeaves;
+    }
+    public int getSide() {
+        return this.side;
+    }
+    public int getLevel(int leaf) {
+        return this.levels[leaf];
+    }
+    public int getColor(int leaf) {
+        return this.colors[leaf];
+    }
+    public double getError(int leaf) {
+        return this.errors[leaf];
+    }
+
+    /**
+     * @return Morton code of the top left pixel of every leaf, in leaf order
+     */
+    public long[] getCodes() {
+        long[] codes = new long[numLeaves];
+        long code = 0;
+        for (int k = 0; k < numLeaves; k++) {
+            codes[k] = code;
+            long size = side >> levels[k];
+            code += size * size;
+        }
+        return codes;
+    }
+
+    /**
+     * row of a Morton code (its odd bits)
+     */
+    public static int codeToI(long code) {
+        return compact(code >>> 1);
+    }
+    /**
+     * column of a Morton code (its even bits)
+     */
+    public static int codeToJ(long code) {
+        return compact(code);
+    }
+
+    /**
+     * gathers the even bits of code into the low 32 bits
+     */
+    private static int compact(long code) {
+        long x = code & 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+        return (int) x;
+    }
+
+    /**
+     * returns new Image with every leaf filled with its mean color
+     * @return Image, "compressed" image of original
+     */
+    public Image getImage() {
+        return getImageTransformed(IntUnaryOperator.identity());
+    }
+
+    /**
+     * returns new shaded Image, same as Quadtree.getImageShaded
+     * @param shadeFactor -1 to invert, or between 0 and 1
+     * @return Image, "compressed" image of original, shaded
+     */
+    public Image getImageShaded(double shadeFactor) {
+        return getImageTransformed(MyColor.shader(shadeFactor));
+    }
+
+    /**
+     * returns new Image with every leaf filled with its mean color put through op, once per leaf
+     * @param op operation on packed colors, e.g. MyColor::greyScale
+     * @return Image, "compressed" image of original with op applied
+     */
+    public Image getImageTransformed(IntUnaryOperator op) {
+        Image newImage = new Image(side, side);
+        long code = 0;
+        for (int k = 0; k < numLeaves; k++) {
+            int size = side >> levels[k];
+            int i = codeToI(code);
+            int j = codeToJ(code);
+            newImage.fillRect(i, j, i + size - 1, j + size - 1, op.applyAsInt(colors[k]) & 0xFFFFFF);
+            code += (long) size * size;
+        }
+        return newImage;
+    }
+
+    /**
+     * returns new Image with every leaf filled with its mean color and outlined in black
+     * @return Image, "compressed" image of original with outlined leaves
+     */
+    public Image getImageOutlined() {
+        Image newImage = getImage();
+        outline(newImage);
+        return newImage;
+    }
+
+    /**
+     * returns new shaded Image with every leaf outlined, same as Quadtree.getImageShadedOutlined
+     * @param shadeFactor -1 to invert, or between 0 and 1
+     * @return Image, "compressed" image of original, shaded, with outlined leaves
+     */
+    public Image getImageShadedOutlined(double shadeFactor) {
+        IntUnaryOperator op = MyColor.shader(shadeFactor);
+        Image newImage = getImageTransformed(op);
+        outline(newImage, op.applyAsInt(0) & 0xFFFFFF); //outline is shaded too
+        return newImage;
+    }
+
+    /**
+     * draws the border of every leaf in black over an image rendered from this tree
+     * @param newImage image to draw outlines onto
+     */
+    public void outline(Image newImage) {
+        outline(newImage, 0);
+    }
+
+    /**
+     * draws the border of every leaf in rgb
+     */
+    private void outline(Image newImage, int rgb) {
+        long code = 0;
+        for (int k = 0; k < numLeaves; k++) {
+            int size = side >> levels[k];
+            int i = codeToI(code);
+            int j = codeToJ(code);
+            newImage.fillRect(i, j, i, j + size - 1, rgb); //top row
+            newImage.fillRect(i + size - 1, j, i + size - 1, j + size - 1, rgb); //bottom row
+            newImage.fillRect(i, j, i + size - 1, j, rgb); //left col
+            newImage.fillRect(i, j + size - 1, i + size - 1, j + size - 1, rgb); //right col
+            code += (long) size * size;
+        }
+    }
+
+    /**
+     * returns Image with edge detection filter, leaves bigger than EDGE_DETECTION_CONSTANT are left black
+     * @param edgeDetectionFilter 2d array of doubles for color weights
+     * @return Image with edge detection filter
+     */
+    public Image getImageEdgeDetected(double[][] edgeDetectionFilter) {
+        int[] rendered = getImage().getPixels();
+        int[] temp = new Convolution(edgeDetectionFilter).apply(rendered, side, side);
+        long code = 0;
+        for (int k = 0; k < numLeaves; k++) {
+            int size = side >> levels[k];
+            if (size > EDGE_DETECTION_CONSTANT) { //big leaves are all black
+                int i = codeToI(code);
+                int j = codeToJ(code);
+                for (int row = i; row < i + size; row++) {
+                    Arrays.fill(temp, row * side + j, row * side + j + size, 0);
+                }
+            }
+            code += (long) size * size;
+        }
+        return new Image(temp, side, side);
+    }
+
+    /**
+     * returns Image with edge detection filter and every leaf outlined in black on top of it
+     * @param edgeDetectionFilter 2d array of doubles for color weights
+     * @return Image with edge detection filter and outlined leaves
+     */
+    public Image getImageEdgeDetectedOutlined(double[][] edgeDetectionFilter) {
+        Image newImage = getImageEdgeDetected(edgeDetectionFilter);
+        outline(newImage);
+        return newImage;
+    }
+}
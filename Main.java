@@ -8,54 +8,55 @@
 
 import java.util.*;
 import java.io.*;
+import java.nio.file.*;
+import java.util.function.*;
 
 public class Main {
 
     public static final double[][] EDGE_DETECTION_FILTER = {{-1, -1, -1}, {-1, 8, -1}, {-1, -1, -1}}; //weights for convolution filter to edge detect
     public static final double[] COMPRESSION_LEVELS = {0.002, 0.004, 0.01, 0.033, 0.077, 0.2, 0.5, 0.75}; //spectrum of compression values to get different compression thresholds
     public static final double COMPRESSION_EDGE_DETECTION = .004; //compression level for efficient edge detection (to view outline, change this to 0.4)
+    public static final int PARALLEL_CUTOFF = 128 * 128; //quadrants with this many pixels or fewer are divided on one thread
+    public static final double COMPRESSION_SEQUENCE = .004; //compression level for frame sequences
+    public static final int SEQUENCE_TOLERANCE = 2; //channel change between frames that counts as unchanged
+    public static final int STREAM_ROWS = 16; //rows rendered at a time when a tree is written straight to a file
+    public static final boolean SPARSE_EDGE_DETECTION = Boolean.getBoolean("quadtree.sparse"); //-Dquadtree.sparse=true to filter only leaf borders (RenderPipeline.sparse)
     
-    //read in file from filename into Image object
+    //read in file (PPM or quadtree file) from filename into Image object, exits if it can't be read
     public static Image read(String filename) {
         
-        Image returnThis = new Image(new MyColor[0][0], 0, 0);
+        Image returnThis = new Image(0, 0);
         try {
-            Scanner scanner = new Scanner(new File(filename));
-            String firstLine = scanner.nextLine();
-            if (firstLine.charAt(0) == '#') {
-                firstLine = scanner.nextLine();
-            }
-            String secondLine = scanner.nextLine();
-            if (secondLine.charAt(0) == '#') {
-                secondLine = scanner.nextLine();
-            }
-            String thirdLine = scanner.nextLine();
-            if (thirdLine.charAt(0) == '#') {
-                thirdLine = scanner.nextLine();
-            }
-            String[] dimensions = secondLine.split(" ");
-            int height = Integer.parseInt(dimensions[0]);
-            int width = Integer.parseInt(dimensions[1]);
-
-            MyColor[][] colorArray = new MyColor[width][height];
-            for (int i = 0; i < height; i++) {
-                for (int j = 0; j < width; j++) {
-                    int r = scanner.nextInt();
-                    int g = scanner.nextInt();
-                    int b = scanner.nextInt();
-                    colorArray[i][j] = new MyColor(r, g, b, i, j);
-                }
-            }
-            returnThis = new Image(colorArray, width, height);
-            return returnThis;
+            returnThis = readImage(filename);
         }
-        catch (FileNotFoundException e) {
+        catch (FileNotFoundException | NoSuchFileException e) {
             System.out.println("Problem opening file");
             System.exit(-1);
         }
+        catch (IOException e) {
+            System.out.println("Problem reading file: " + e.getMessage());
+            System.exit(-1);
+        }
         return returnThis;
     }
 
+    /**
+     * @param filename PPM, quadtree or progressive file
+     * @return decoded Image
+     * @throws IOException if the file can't be opened or read
+     */
+    public static Image readImage(String filename) throws IOException {
+        if (ProgressiveFile.isProgressiveFile(filename)) {
+            return ProgressiveFile.read(filename);
+        }
+        if (QuadtreeFile.isQuadtreeFile(filename)) {
+            return QuadtreeFile.read(filename);
+        }
+        try (PpmReader reader = new PpmReader(filename)) {
+            return reader.read();
+        }
+    }
+
     
     /**
      * @param filename The name of destination file
@@ -63,53 +64,300 @@ public class Main {
      * @throws IOException 
      */
     public static void writeImg(String filename, Image image) throws IOException { 
-        MyColor[][] img = image.getColorArray();
-        PrintWriter out = new PrintWriter(filename);
-        out.print("P3 ");
-        out.println(img[0].length+ " " +img.length+ " 255"); 
-        for (int i=0; i<img.length; i++) { 
-            for (int j = 0; j < img[0].length; j++) { 
-                
-                    out.print(  img[i][j].getR()+" "+
-                            img[i][j].getG() +" "+
-                            img[i][j].getB() +" "); 
-                
-            }
-	    out.println(); }
-        out.close();
+        writeImg(filename, image, false);
+    }
+
+    /**
+     * @param filename The name of destination file
+     * @param image the image to be written out
+     * @param binary true to write binary P6 (about a third the size), false for ASCII P3
+     * @throws IOException 
+     */
+    public static void writeImg(String filename, Image image, boolean binary) throws IOException { 
+        try (PpmWriter out = new PpmWriter(filename, image.getWidth(), image.getHeight(), binary)) {
+            out.write(image);
+        }
     }
 
+    /**
+     * render a tree straight into a file a few rows at a time, without the whole frame in memory
+     * @param filename The name of destination file
+     * @param quadtree tree to render
+     * @param t threshold to render at, Double.NEGATIVE_INFINITY for every leaf (see Quadtree.renderRows)
+     * @param outline true to outline drawn nodes
+     * @param binary true to write binary P6, false for ASCII P3
+     * @throws IOException
+     */
+    public static void writeImg(String filename, Quadtree<?> quadtree, double t, boolean outline, boolean binary) throws IOException {
+        int width = quadtree.getWidth();
+        int height = quadtree.getHeight();
+        int[] rows = new int[STREAM_ROWS * width];
+        try (PpmWriter out = new PpmWriter(filename, width, height, binary)) {
+            for (int top = 0; top < height; top += STREAM_ROWS) {
+                int bottom = Math.min(top + STREAM_ROWS, height) - 1;
+                quadtree.renderRows(t, outline, top, bottom, rows);
+                out.writeRows(rows, 0, bottom - top + 1);
+            }
+        }
+    }
 
-    public static void main(String[] args) throws IOException {
-        
-        String outputFilename = "";
-        String inputFilename = "";
+
+    /**
+     * flags given on the command line
+     */
+    static class Options {
         boolean edgeDetection = false;
         boolean compression = false;
         boolean outline = false;
         boolean extraCredit = false;
+        boolean binary = false;
+        boolean greyScale = false;
+        boolean quadtreeFile = false;
+        boolean progressive = false;
+        double[] region = null; //top, left, height, width, scale of viewport to render
         double shadeFactor = 0;
+        int parallelCutoff = PARALLEL_CUTOFF; //see Quadtree(Image, double, int)
+        Instrumentation instrumentation = new Instrumentation(false, false); //phases and trees are recorded here
+        Quadtree.Budget budget = null; //leaf, size or PSNR budget instead of compression levels
+    }
+
+    /**
+     * one output file waiting to be written
+     */
+    interface Output {
+        void write() throws IOException;
+    }
+
+    /**
+     * do everything the flags ask for to one image, without writing anything yet
+     * @param image image to process
+     * @param outputFilename name of output, compression levels get -1 to -8 added
+     * @param options flags
+     * @return outputs to write, in order
+     */
+    @SuppressWarnings("try")
+    static List<Output> process(Image image, String outputFilename, Options options) {
+        List<Output> outputs = new ArrayList<Output>();
+        boolean binary = options.binary;
+        Instrumentation instrumentation = options.instrumentation;
+        if (options.region != null) {
+            double[] region = options.region;
+            int top = (int) region[0];
+            int left = (int) region[1];
+            if (top + (int) region[2] > image.getHeight() || left + (int) region[3] > image.getWidth()) { //before the tree is built
+                throw new IllegalArgumentException("viewport must be inside the " + image.getWidth() + " x " + image.getHeight() + " image!");
+            }
+            Quadtree<MyColor> quadtree = build(image, 0, options);
+            Image rendered;
+            try (Instrumentation.Phase phase = instrumentation.start("render")) {
+                rendered = quadtree.getRegion(top, left, (int) region[2], (int) region[3], region[4]);
+            }
+            outputs.add(() -> writeImg(outputFilename, rendered, binary));
+        }
+        else if (options.budget != null) {
+            Quadtree<MyColor> quadtree;
+            try (Instrumentation.Phase phase = instrumentation.start("build")) {
+                quadtree = new Quadtree<MyColor>(image, options.budget);
+            }
+            instrumentation.recordTree(quadtree);
+            if (options.quadtreeFile && !options.outline) { //not deflated, so a bytes budget is the exact file size limit
+                outputs.add(() -> QuadtreeFile.write(outputFilename, quadtree, 0, false));
+                return outputs;
+            }
+            //rendered as it is written
+            boolean outline = options.outline;
+            outputs.add(() -> writeImg(outputFilename, quadtree, Double.NEGATIVE_INFINITY, outline, binary));
+        }
+        else if (options.edgeDetection) {
+            Quadtree<MyColor> quadtree = build(image, COMPRESSION_EDGE_DETECTION, options);
+            //same as getImageEdgeDetected(Outlined), render and filter timed separately
+            RenderPipeline pipeline = new RenderPipeline(quadtree).edgeDetection(EDGE_DETECTION_FILTER);
+            if (SPARSE_EDGE_DETECTION) {
+                pipeline.sparse();
+            }
+            if (options.outline) {
+                pipeline.outline();
+            }
+            Image filtered = pipeline.render(instrumentation);
+            outputs.add(() -> writeImg(outputFilename, filtered, binary));
+        }
+        else if (options.compression) {
+            ArrayList<String> names = new ArrayList<String>();
+            for (int i = 1; i < 9; i++) {
+                names.add(outputFilename + "-" + i);
+            }
+	                
+            //one tree built with the smallest threshold renders every level
+            double minLevel = COMPRESSION_LEVELS[0];
+            for (int i = 1; i < COMPRESSION_LEVELS.length; i++) {
+                minLevel = Math.min(minLevel, COMPRESSION_LEVELS[i]);
+            }
+            Quadtree<MyColor> quadtree = build(image, minLevel, options);
+            if (options.quadtreeFile && !options.outline) { //store the trees themselves, not their renders
+                for (int i = 0; i < COMPRESSION_LEVELS.length; i++) {
+                    String name = names.get(i);
+                    double level = COMPRESSION_LEVELS[i];
+                    outputs.add(() -> QuadtreeFile.write(name, quadtree, level, true));
+                }
+                return outputs;
+            }
+            if (options.progressive && !options.outline) { //coarse to fine, any prefix of each file is a preview
+                for (int i = 0; i < COMPRESSION_LEVELS.length; i++) {
+                    String name = names.get(i);
+                    double level = COMPRESSION_LEVELS[i];
+                    outputs.add(() -> ProgressiveFile.write(name, quadtree, level));
+                }
+                return outputs;
+            }
+            //each level is rendered as it is written, so no frame is ever held
+            boolean outline = options.outline;
+            for (int i = 0; i < COMPRESSION_LEVELS.length; i++) {
+                String name = names.get(i);
+                double level = COMPRESSION_LEVELS[i];
+                outputs.add(() -> writeImg(name, quadtree, level, outline, binary));
+            }
+        }
+        else if (options.extraCredit || options.greyScale) {
+            //color change runs once per leaf as the tree is rendered
+            IntUnaryOperator op = options.greyScale ? MyColor::greyScale : MyColor.shader(options.shadeFactor);
+            Quadtree<MyColor> quadtree = build(image, 0, options);
+            Image rendered;
+            try (Instrumentation.Phase phase = instrumentation.start("render")) {
+                if (options.outline) {
+                    rendered = quadtree.getImageTransformedOutlined(op);
+                }
+                else {
+                    rendered = quadtree.getImageTransformed(op);
+                }
+            }
+            outputs.add(() -> writeImg(outputFilename, rendered, binary));
+        }
+        else { //no processing, e.g. decoding a quadtree file or converting P3 to P6
+            outputs.add(() -> writeImg(outputFilename, image, binary));
+        }
+        return outputs;
+    }
+
+    /**
+     * build a tree the way the flags ask, timed and recorded in options.instrumentation
+     */
+    @SuppressWarnings("try")
+    private static Quadtree<MyColor> build(Image image, double threshold, Options options) {
+        Quadtree<MyColor> quadtree;
+        try (Instrumentation.Phase phase = options.instrumentation.start("build")) {
+            quadtree = new Quadtree<MyColor>(image, threshold, options.parallelCutoff);
+        }
+        options.instrumentation.recordTree(quadtree);
+        return quadtree;
+    }
+
+    /**
+     * write outputs of process, timed as encode
+     */
+    @SuppressWarnings("try")
+    static void write(List<Output> outputs, Options options) throws IOException {
+        try (Instrumentation.Phase phase = options.instrumentation.start("encode")) {
+            for (Output output : outputs) {
+                output.write();
+            }
+        }
+    }
+
+
+    @SuppressWarnings("try")
+    public static void main(String[] args) throws IOException {
+        
+        String outputFilename = "";
+        String inputFilename = "";
+        String batchInput = null; //directory or list of files for batch mode
+        String summaryFilename = null; //JSON summary of phases and trees, none if null
+        String sequenceInput = null; //directory or list of frames for sequence mode
+        int tileSize = 0; //0 to load the whole image
+        Options options = new Options();
         for (int i = 0; i < args.length; i++) {
             if (args[i].charAt(0) == '-') {
                 if (args[i].charAt(1) == 'o') {
                     outputFilename = args[i + 1];
                 }
                 if (args[i].charAt(1) == 'c') {
-                    compression = true;
+                    options.compression = true;
                 }
                 if (args[i].charAt(1) == 'e') {
-                    edgeDetection = true;
+                    options.edgeDetection = true;
                 }
                 if (args[i].charAt(1) == 't') {
-                    outline = true;
+                    options.outline = true;
+                }
+                if (args[i].charAt(1) == 'g') {
+                    options.greyScale = true;
+                }
+                if (args[i].charAt(1) == 'b') {
+                    options.binary = true;
+                }
+                if (args[i].charAt(1) == 'z') {
+                    options.quadtreeFile = true;
+                }
+                if (args[i].charAt(1) == 'p') {
+                    options.progressive = true;
+                }
+                if (args[i].charAt(1) == 'd') {
+                    batchInput = args[i + 1];
+                }
+                if (args[i].charAt(1) == 's') {
+                    summaryFilename = args[i + 1];
+                }
+                if (args[i].charAt(1) == 'r') {
+                    try {
+                        options.budget = Quadtree.Budget.parse(args[i + 1]);
+                    }
+                    catch (IllegalArgumentException e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+                if (args[i].charAt(1) == 'q') {
+                    sequenceInput = args[i + 1];
+                }
+                if (args[i].charAt(1) == 'T') {
+                    try {
+                        tileSize = Integer.parseInt(args[i + 1]);
+                    }
+                    catch (NumberFormatException e) {
+                        tileSize = -1;
+                    }
+                    if (tileSize < 1 || tileSize > TiledProcessor.MAX_TILE_SIZE || Integer.bitCount(tileSize) != 1) { //TiledProcessor would throw
+                        System.out.println("tile size must be a power of 2 up to " + TiledProcessor.MAX_TILE_SIZE + "!");
+                        tileSize = 0;
+                    }
+                }
+                if (args[i].charAt(1) == 'v') {
+                    try {
+                        String[] parts = args[i + 1].split(",");
+                        options.region = new double[5];
+                        for (int k = 0; k < 5; k++) {
+                            options.region[k] = Double.parseDouble(parts[k]);
+                        }
+                        double[] region = options.region;
+                        if (!(region[0] >= 0 && region[1] >= 0 && region[2] >= 1 && region[3] >= 1 && region[4] > 0)) { //NaN fails too
+                            System.out.println("viewport top and left must be 0 or more, height and width 1 or more, and scale more than 0!");
+                            options.region = null;
+                        }
+                        else if (region[2] * region[3] * region[4] * region[4] > Integer.MAX_VALUE - 8) {
+                            System.out.println("viewport is too big to render at that scale!");
+                            options.region = null;
+                        }
+                    }
+                    catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        System.out.println("viewport must be given as top,left,height,width,scale!");
+                        options.region = null;
+                    }
                 }
                 if (args[i].charAt(1) == 'i') {
                     inputFilename = args[i + 1];
                 }
                 if (args[i].charAt(1) == 'x') {
-                    extraCredit = true;
+                    options.extraCredit = true;
                     try {
-                        shadeFactor = Double.parseDouble(args[i + 1]);
+                        options.shadeFactor = Double.parseDouble(args[i + 1]);
                     }
                     catch (NumberFormatException e) {
                         System.out.println("shadeFactor must be a double from -1 to 1!");
@@ -117,48 +365,92 @@ public class Main {
                 }
             }
         }
-        
-        Image image = read(inputFilename);
 
-        if (edgeDetection) {
-            if (outline) {
-                Quadtree<MyColor> quadtree = new Quadtree<MyColor>(image, COMPRESSION_EDGE_DETECTION);
-                writeImg(outputFilename, quadtree.getImageEdgeDetectedOutlined(EDGE_DETECTION_FILTER));
+        //batch phases overlap on different threads, so each counts only its own thread's allocation
+        options.instrumentation = new Instrumentation(batchInput != null, summaryFilename != null);
+
+        if (sequenceInput != null) { //frames of one animation into one delta stream
+            try {
+                List<String> frames = BatchProcessor.listInputs(sequenceInput);
+                new SequenceProcessor(COMPRESSION_SEQUENCE, SEQUENCE_TOLERANCE, options.instrumentation).encode(frames, outputFilename);
+            }
+            catch (FileNotFoundException | NoSuchFileException e) {
+                System.out.println("Problem opening file");
+                System.exit(-1);
+            }
+            catch (IOException e) { //a frame that can't be read or doesn't match the first, or the stream can't be written
+                System.out.println("Problem reading file: " + e.getMessage());
+                System.exit(-1);
             }
-            else {
-                Quadtree<MyColor> quadtree = new Quadtree<MyColor>(image, COMPRESSION_EDGE_DETECTION);
-                writeImg(outputFilename, quadtree.getImageEdgeDetected(EDGE_DETECTION_FILTER));
+            if (summaryFilename != null) {
+                options.instrumentation.writeSummary(summaryFilename);
             }
+            return;
         }
-        else if (compression) {
-            ArrayList<String> outputs = new ArrayList<String>();
-            for (int i = 1; i < 9; i++) {
-                outputs.add(outputFilename + "-" + i);
+        if (SequenceProcessor.isSequenceFile(inputFilename)) { //decode a delta stream into one file per frame
+            try {
+                SequenceProcessor.decode(inputFilename, outputFilename, options.binary);
             }
-	                
-            if (outline) {
-                for (int i = 0; i < COMPRESSION_LEVELS.length; i++) {
-                    Quadtree<MyColor> curQuadtree = new Quadtree<MyColor>(image, COMPRESSION_LEVELS[i]);
-                    writeImg(outputs.get(i), curQuadtree.getImageOutlined());
-                }
+            catch (IOException e) {
+                System.out.println("Problem reading file: " + e.getMessage());
+                System.exit(-1);
             }
-            else {
-                for (int i = 0; i < COMPRESSION_LEVELS.length; i++) {
-                    Quadtree<MyColor> curQuadtree = new Quadtree<MyColor>(image, COMPRESSION_LEVELS[i]);
-		            writeImg(outputs.get(i), curQuadtree.getImage());
+            return;
+        }
+
+        if (batchInput != null) { //many images in one JVM, output is a directory
+            options.parallelCutoff = Integer.MAX_VALUE; //images run side by side, so each tree is built on one thread
+            try {
+                List<String> inputs = BatchProcessor.listInputs(batchInput);
+                int failed = new BatchProcessor(options).run(inputs, outputFilename);
+                if (summaryFilename != null) {
+                    options.instrumentation.writeSummary(summaryFilename);
+                }
+                if (failed > 0) {
+                    System.exit(-1);
                 }
             }
+            catch (NoSuchFileException e) {
+                System.out.println("Problem opening file");
+                System.exit(-1);
+            }
+            return;
         }
-        else if (extraCredit) {
-            if (outline) {
-                Quadtree<MyColor> quadtree = new Quadtree<MyColor>(image, 0);
-                writeImg(outputFilename, quadtree.getImageShadedOutlined(shadeFactor));
-
+        
+        if (options.compression && tileSize > 0 && !options.quadtreeFile && !options.progressive) { //stream the image through in tiles, never holding all of it
+            String[] outputs = new String[COMPRESSION_LEVELS.length];
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = outputFilename + "-" + (i + 1);
+            }
+            try {
+                TiledProcessor.compress(inputFilename, outputs, COMPRESSION_LEVELS, tileSize, options.outline, options.binary);
             }
-            else {
-                Quadtree<MyColor> quadtree = new Quadtree<MyColor>(image, 0);
-                writeImg(outputFilename, quadtree.getImageShaded(shadeFactor));
+            catch (NoSuchFileException e) {
+                System.out.println("Problem opening file");
+                System.exit(-1);
             }
+            catch (IOException e) {
+                System.out.println("Problem reading file: " + e.getMessage());
+                System.exit(-1);
+            }
+            return;
+        }
+
+        Image image;
+        try (Instrumentation.Phase phase = options.instrumentation.start("decode")) {
+            image = read(inputFilename);
+        }
+        List<Output> outputs = null;
+        try {
+            outputs = process(image, outputFilename, options);
+        }
+        catch (IllegalArgumentException e) { //viewport outside the image, or a bad shade factor
+            System.out.println(e.getMessage());
+            System.exit(-1);
+        }
+        write(outputs, options);
+        if (summaryFilename != null) {
+            options.instrumentation.writeSummary(summaryFilename);
         }
     }
 }
@@ -7,6 +7,7 @@
  */
 
 
+import java.util.function.*;
 
 public class MyColor implements Comparable<MyColor>  {
     
@@ -32,6 +33,37 @@ public class MyColor implements Comparable<MyColor>  {
         this.j = j;
     }
 
+    /**
+     * Create a MyColor from one packed 0xRRGGBB pixel of an Image
+     * @param rgb packed pixel
+     */
+    public MyColor(int rgb) {
+        this(red(rgb), green(rgb), blue(rgb));
+    }
+
+    /**
+     * pack three channels (each 0-255) into one 0xRRGGBB int, the format Image stores pixels in
+     */
+    public static int pack(int red, int green, int blue) {
+        return (red << 16) | (green << 8) | blue;
+    }
+    public static int red(int rgb) {
+        return (rgb >> 16) & 0xFF;
+    }
+    public static int green(int rgb) {
+        return (rgb >> 8) & 0xFF;
+    }
+    public static int blue(int rgb) {
+        return rgb & 0xFF;
+    }
+
+    /**
+     * @return this color packed as 0xRRGGBB
+     */
+    public int getRGB() {
+        return pack(this.red, this.green, this.blue);
+    }
+
     public int getR() {
         return this.red;
     }
@@ -82,6 +114,37 @@ public class MyColor implements Comparable<MyColor>  {
         this.blue = c;
     }
 
+    //same three operations on packed colors, for Image and Quadtree renders
+
+    public static int shade(int rgb, double shadeFactor) {
+        return pack((int) (red(rgb) * shadeFactor), (int) (green(rgb) * shadeFactor), (int) (blue(rgb) * shadeFactor));
+    }
+
+    public static int negative(int rgb) {
+        return rgb ^ 0xFFFFFF; //255 - channel for all three channels
+    }
+
+    public static int greyScale(int rgb) {
+        int c = (int) (red(rgb) * 0.3 + green(rgb) * 0.59 + blue(rgb) * 0.11);
+        return pack(c, c, c);
+    }
+
+    /**
+     * returns the packed color operation for a shade factor: -1 inverts (negative), 0 to 1 shades
+     * @param shadeFactor -1, or between 0 and 1
+     * @return operation to apply to packed colors
+     * @throws IllegalArgumentException if shadeFactor is not -1 or between 0 and 1
+     */
+    public static IntUnaryOperator shader(double shadeFactor) throws IllegalArgumentException {
+        if (shadeFactor == -1) {
+            return MyColor::negative;
+        }
+        if ((shadeFactor < 0) || (shadeFactor > 1)) {
+            throw new IllegalArgumentException("shadeFactor must be between 0 and 1!");
+        }
+        return rgb -> shade(rgb, shadeFactor);
+    }
+
     public String toString() {
         return this.red + "/" + this.green + "/" + this.blue;
     }
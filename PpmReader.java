@@ -0,0 +1,222 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: PpmReader.java
+ * Desc:
+ *
+ * Decodes ASCII (P3) and binary (P6) PPM files into packed pixels
+ * Reads the file through a FileChannel into one large reusable byte buffer and tokenizes the bytes directly,
+ * so no Strings or regexes are made per number. Rows can be pulled a few at a time so big files can be streamed.
+ *
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+public class PpmReader implements Closeable {
+
+    public static final int BUFFER_SIZE = 1 << 20; //bytes read from the channel at a time
+
+    private FileChannel channel; //file being read
+    private byte[] buffer = new byte[BUFFER_SIZE]; //bytes read from channel but not yet decoded
+    private ByteBuffer wrapped = ByteBuffer.wrap(buffer); //view of buffer for channel reads
+    private int position; //next byte of buffer to decode
+    private int limit; //number of valid bytes in buffer
+    private boolean binary; //true for P6, false for P3
+    private int width;
+    private int height;
+    private int maxValue; //largest sample value, given in header
+    private int rowsRead; //rows decoded so far
+
+    /**
+     * Open a PPM file and read its header
+     * @param filename
+     * @throws IOException if the file can't be opened or is not a P3/P6 file
+     */
+    public PpmReader(String filename) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            readHeader(filename);
+        }
+        catch (IOException e) {
+            channel.close(); //nobody else can, the constructor never returns
+            throw e;
+        }
+    }
+
+    private void readHeader(String filename) throws IOException {
+        int p = nextByte();
+        int magic = nextByte();
+        if (p != 'P' || (magic != '3' && magic != '6')) {
+            throw new IOException(filename + " is not a P3 or P6 PPM file");
+        }
+        this.binary = (magic == '6');
+        this.width = nextInt();
+        this.height = nextInt();
+        this.maxValue = nextInt(); //nextInt also reads the one whitespace byte that ends the header
+        if (width <= 0 || height <= 0 || maxValue <= 0 || maxValue > 65535) {
+            throw new IOException(filename + " has a bad PPM header: " + width + " x " + height + ", max value " + maxValue);
+        }
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+    public int getHeight() {
+        return this.height;
+    }
+    public boolean isBinary() {
+        return this.binary;
+    }
+
+    /**
+     * read the whole raster into an Image
+     * @return Image holding every pixel of the file
+     * @throws IOException if the file ends early or is too big for one array
+     */
+    public Image read() throws IOException {
+        long size = (long) width * height;
+        if (size <= 0 || size > Integer.MAX_VALUE - 8) {
+            throw new IOException("PPM image of " + width + " x " + height + " pixels is too big to read whole");
+        }
+        int[] pixels = new int[(int) size];
+        readRows(pixels, 0, height - rowsRead);
+        return new Image(pixels, width, height);
+    }
+
+    /**
+     * decode the next rows of the raster
+     * @param dest packed pixels to write into
+     * @param offset index of dest to write the first pixel to
+     * @param rows number of rows to decode
+     * @throws IOException if the file ends early
+     */
+    public void readRows(int[] dest, int offset, int rows) throws IOException {
+        int count = rows * width;
+        if (binary && maxValue < 256) {
+            readBinary(dest, offset, count);
+        }
+        else {
+            for (int p = offset; p < offset + count; p++) {
+                int r = nextSample();
+                int g = nextSample();
+                int b = nextSample();
+                dest[p] = MyColor.pack(r, g, b);
+            }
+        }
+        rowsRead += rows;
+    }
+
+    /**
+     * P6 with one byte per sample: pack straight out of buffer, refilling it in bulk
+     */
+    private void readBinary(int[] dest, int offset, int count) throws IOException {
+        int p = offset;
+        int end = offset + count;
+        while (p < end) {
+            if (limit - position < 3) {
+                fill();
+                if (limit - position < 3) {
+                    throw new EOFException("PPM file ended early");
+                }
+            }
+            int pixelsHere = Math.min(end - p, (limit - position) / 3);
+            int at = position;
+            for (int k = 0; k < pixelsHere; k++) {
+                dest[p++] = scale((buffer[at] & 0xFF), (buffer[at + 1] & 0xFF), (buffer[at + 2] & 0xFF));
+                at += 3;
+            }
+            position = at;
+        }
+    }
+
+    private int scale(int r, int g, int b) throws IOException {
+        if (maxValue == 255) {
+            return MyColor.pack(r, g, b);
+        }
+        if (r > maxValue || g > maxValue || b > maxValue) {
+            throw new IOException("PPM sample above max value " + maxValue);
+        }
+        return MyColor.pack(r * 255 / maxValue, g * 255 / maxValue, b * 255 / maxValue);
+    }
+
+    /**
+     * next sample (one channel of one pixel) as a value from 0 to 255
+     */
+    private int nextSample() throws IOException {
+        int value;
+        if (binary) { //two bytes per sample, most significant first
+            value = (nextByte() << 8) | nextByte();
+        }
+        else {
+            value = nextInt();
+        }
+        if (value > maxValue) { //would spill into the next channel, or the top byte RenderPipeline marks with
+            throw new IOException("PPM sample " + value + " above max value " + maxValue);
+        }
+        return (maxValue == 255) ? value : value * 255 / maxValue;
+    }
+
+    /**
+     * parse the next ASCII number, skipping whitespace and # comments before it
+     */
+    private int nextInt() throws IOException {
+        int c = nextByte();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '#') {
+            if (c == '#') { //comment runs to end of line
+                while (c != '\n' && c != '\r') {
+                    c = nextByte();
+                }
+            }
+            c = nextByte();
+        }
+        if (c < '0' || c > '9') {
+            throw new IOException("Unexpected character '" + (char) c + "' in PPM file");
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            if (value > (Integer.MAX_VALUE - 9) / 10) {
+                throw new IOException("Number too big in PPM file");
+            }
+            value = value * 10 + (c - '0');
+            if (position >= limit && !fill()) { //number ends at end of file
+                return value;
+            }
+            c = buffer[position++];
+        }
+        return value;
+    }
+
+    private int nextByte() throws IOException {
+        if (position >= limit && !fill()) {
+            throw new EOFException("PPM file ended early");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * move undecoded bytes to front of buffer and read more from channel
+     * @return false if there was nothing left to read
+     */
+    private boolean fill() throws IOException {
+        int remaining = limit - position;
+        System.arraycopy(buffer, position, buffer, 0, remaining);
+        position = 0;
+        limit = remaining;
+        wrapped.clear();
+        wrapped.position(limit);
+        int n = channel.read(wrapped);
+        while (n == 0) {
+            n = channel.read(wrapped);
+        }
+        if (n < 0) {
+            return limit > 0;
+        }
+        limit += n;
+        return true;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,133 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: PpmWriter.java
+ * Desc:
+ *
+ * Encodes packed pixels as ASCII (P3) or binary (P6) PPM files
+ * Digits are copied from a lookup table into one reusable byte buffer, which is flushed through a FileChannel,
+ * so no Strings are made per pixel. Rows can be pushed a few at a time so big images can be streamed out.
+ *
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+public class PpmWriter implements Closeable {
+
+    public static final int BUFFER_SIZE = 1 << 20; //bytes collected before each write to the channel
+    private static final byte[][] DIGITS = new byte[256][]; //ASCII digits of every sample value 0-255
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            DIGITS[v] = Integer.toString(v).getBytes();
+        }
+    }
+
+    private FileChannel channel; //file being written
+    private byte[] buffer = new byte[BUFFER_SIZE]; //encoded bytes not yet written
+    private ByteBuffer wrapped = ByteBuffer.wrap(buffer); //view of buffer for channel writes
+    private int position; //number of bytes in buffer
+    private boolean binary; //true for P6, false for P3
+    private int width;
+    private int height;
+
+    /**
+     * Create (or overwrite) a PPM file and write its header
+     * @param filename
+     * @param width
+     * @param height
+     * @param binary true to write P6, false to write P3
+     * @throws IOException
+     */
+    public PpmWriter(String filename, int width, int height, boolean binary) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.width = width;
+        this.height = height;
+        this.binary = binary;
+        byte[] header = ((binary ? "P6\n" : "P3\n") + width + " " + height + "\n255\n").getBytes();
+        System.arraycopy(header, 0, buffer, 0, header.length);
+        position = header.length;
+    }
+
+    /**
+     * write out a whole image
+     * @param image image with the same dimensions as this writer
+     * @throws IOException
+     */
+    public void write(Image image) throws IOException {
+        writeRows(image.getPixels(), 0, image.getHeight());
+    }
+
+    /**
+     * encode the next rows of the raster
+     * @param src packed pixels to write
+     * @param offset index of src of the first pixel to write
+     * @param rows number of rows to write
+     * @throws IOException
+     */
+    public void writeRows(int[] src, int offset, int rows) throws IOException {
+        for (int row = 0; row < rows; row++) {
+            int start = offset + row * width;
+            if (binary) {
+                writeBinaryRow(src, start);
+            }
+            else {
+                writeTextRow(src, start);
+            }
+        }
+    }
+
+    private void writeBinaryRow(int[] src, int start) throws IOException {
+        for (int p = start; p < start + width; p++) {
+            if (BUFFER_SIZE - position < 3) {
+                flush();
+            }
+            int rgb = src[p];
+            buffer[position++] = (byte) MyColor.red(rgb);
+            buffer[position++] = (byte) MyColor.green(rgb);
+            buffer[position++] = (byte) MyColor.blue(rgb);
+        }
+    }
+
+    private void writeTextRow(int[] src, int start) throws IOException {
+        for (int p = start; p < start + width; p++) {
+            if (BUFFER_SIZE - position < 13) { //"255 255 255 " is the longest pixel
+                flush();
+            }
+            int rgb = src[p];
+            putSample(MyColor.red(rgb));
+            putSample(MyColor.green(rgb));
+            putSample(MyColor.blue(rgb));
+        }
+        if (position == BUFFER_SIZE) {
+            flush();
+        }
+        buffer[position++] = '\n';
+    }
+
+    private void putSample(int value) {
+        byte[] digits = DIGITS[value];
+        for (int k = 0; k < digits.length; k++) {
+            buffer[position++] = digits[k];
+        }
+        buffer[position++] = ' ';
+    }
+
+    /**
+     * write everything in buffer to channel
+     */
+    private void flush() throws IOException {
+        wrapped.clear();
+        wrapped.limit(position);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+        position = 0;
+    }
+
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
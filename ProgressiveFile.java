@@ -0,0 +1,201 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: ProgressiveFile.java
+ * Desc:
+ *
+ * Progressive (coarse to fine) container for a Quadtree, for sending images over slow links
+ * The tree is stored breadth first, so any prefix of the file is a valid, coarser image: the first 15 bytes already
+ * give the whole image in its mean color, and every record after that splits one quadrant into four.
+ *
+ * Layout: "QTP1", int width, int height, root mean color (3 bytes), then node records in breadth first order
+ * (NW, NE, SW, SE within each parent) for every node bigger than 1x1:
+ *   before every 8th node, one byte of split bits for it and the next 7 nodes (most significant bit first)
+ *   after the split bits, for each divided node in turn, the mean colors of its 4 children (3 bytes each)
+ * Children that are 1x1 can't divide and get no record.
+ *
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class ProgressiveFile {
+
+    public static final byte[] MAGIC = {'Q', 'T', 'P', '1'}; //first bytes of every progressive file
+
+    /**
+     * collects node records while a Quadtree walks itself breadth first
+     */
+    public static class Encoder {
+
+        private DataOutputStream out;
+        private int pendingFlags; //split bits of current group of 8 nodes
+        private int pendingNodes; //nodes in current group
+        private ByteArrayOutputStream pendingColors = new ByteArrayOutputStream(); //child colors of current group
+
+        public Encoder(DataOutputStream out) {
+            this.out = out;
+        }
+
+        public void writeRoot(int rgb) throws IOException {
+            writeColor(out, rgb);
+        }
+
+        /**
+         * record the next node bigger than 1x1 in breadth first order
+         * @param divided whether the node is divided
+         * @param children mean colors of its NW, NE, SW and SE children, ignored if not divided
+         */
+        public void writeNode(boolean divided, int[] children) throws IOException {
+            if (divided) {
+                pendingFlags |= 1 << (7 - pendingNodes);
+                for (int k = 0; k < 4; k++) {
+                    pendingColors.write(MyColor.red(children[k]));
+                    pendingColors.write(MyColor.green(children[k]));
+                    pendingColors.write(MyColor.blue(children[k]));
+                }
+            }
+            pendingNodes++;
+            if (pendingNodes == 8) {
+                flushGroup();
+            }
+        }
+
+        public void finish() throws IOException {
+            if (pendingNodes > 0) {
+                flushGroup();
+            }
+            out.flush();
+        }
+
+        private void flushGroup() throws IOException {
+            out.writeByte(pendingFlags);
+            pendingColors.writeTo(out);
+            pendingColors.reset();
+            pendingFlags = 0;
+            pendingNodes = 0;
+        }
+    }
+
+    private static void writeColor(DataOutputStream out, int rgb) throws IOException {
+        out.writeByte(MyColor.red(rgb));
+        out.writeByte(MyColor.green(rgb));
+        out.writeByte(MyColor.blue(rgb));
+    }
+
+    /**
+     * write a tree, stored at threshold t, to a progressive file
+     * @param filename destination file
+     * @param tree tree to store
+     * @param t threshold to store the tree at (see Quadtree.getImage(double))
+     * @throws IOException
+     */
+    public static void write(String filename, Quadtree<?> tree, double t) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.write(MAGIC);
+            out.writeInt(tree.getWidth());
+            out.writeInt(tree.getHeight());
+            Encoder encoder = new Encoder(out);
+            tree.encodeProgressive(encoder, t);
+            encoder.finish();
+        }
+    }
+
+    /**
+     * @return true if filename starts with MAGIC
+     */
+    public static boolean isProgressiveFile(String filename) {
+        try (InputStream in = new FileInputStream(filename)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * decode a progressive file, or as much of it as there is
+     * @param filename progressive file
+     * @return Image at the finest detail the file holds
+     * @throws IOException if the file is not a progressive file or is too short to hold the root color
+     */
+    public static Image read(String filename) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename))) {
+            return decode(in);
+        }
+    }
+
+    /**
+     * decode a progressive stream. Every record read refines the image, and the stream may end anywhere after the
+     * root color: whatever arrived is rendered, quadrants whose children never arrived keep their own mean color
+     * @param in stream positioned at the start of the file
+     * @return Image at the finest detail received
+     * @throws IOException if the stream is not a progressive file, its size doesn't fit one image, or it ends before
+     * the root color
+     */
+    public static Image decode(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] start = new byte[MAGIC.length];
+        data.readFully(start);
+        if (!Arrays.equals(start, MAGIC)) {
+            throw new IOException("not a progressive quadtree file");
+        }
+        int width = data.readInt();
+        int height = data.readInt();
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8) { //checked before allocating
+            throw new IOException("progressive file has an image of " + width + " x " + height + " pixels");
+        }
+        Image image = new Image(width, height);
+        image.fillRect(0, 0, height - 1, width - 1, readColor(data));
+
+        //quadrants waiting for their record, as {startI, startJ, endI, endJ}, in the encoder's order
+        ArrayDeque<int[]> queue = new ArrayDeque<int[]>();
+        if (height > 1 && width > 1) {
+            queue.add(new int[] {0, 0, height - 1, width - 1});
+        }
+        int flags = 0;
+        int nodesRead = 0;
+        int[] colors = new int[4];
+        try {
+            while (!queue.isEmpty()) {
+                if (nodesRead % 8 == 0) {
+                    flags = data.readUnsignedByte();
+                }
+                int[] n = queue.poll();
+                boolean divided = ((flags >> (7 - nodesRead % 8)) & 1) == 1;
+                nodesRead++;
+                if (!divided) {
+                    continue;
+                }
+                for (int k = 0; k < 4; k++) { //read all four before drawing, so a cut off record changes nothing
+                    colors[k] = readColor(data);
+                }
+                //same split as Quadtree.Node.divideNode
+                int midI = ( (n[2] - n[0]) / 2) + n[0];
+                int midJ = ( (n[3] - n[1]) / 2) + n[1];
+                int[][] children = {
+                    {n[0], n[1], midI, midJ}, //NW
+                    {n[0], midJ + 1, midI, n[3]}, //NE
+                    {midI + 1, n[1], n[2], midJ}, //SW
+                    {midI + 1, midJ + 1, n[2], n[3]} //SE
+                };
+                for (int k = 0; k < 4; k++) {
+                    int[] c = children[k];
+                    image.fillRect(c[0], c[1], c[2], c[3], colors[k]);
+                    if (c[2] > c[0] && c[3] > c[1]) {
+                        queue.add(c);
+                    }
+                }
+            }
+        }
+        catch (EOFException e) {
+            //stream ended early, image has every record that arrived
+        }
+        return image;
+    }
+
+    private static int readColor(DataInputStream data) throws IOException {
+        int r = data.readUnsignedByte();
+        int g = data.readUnsignedByte();
+        int b = data.readUnsignedByte();
+        return MyColor.pack(r, g, b);
+    }
+}
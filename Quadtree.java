@@ -12,356 +12,981 @@
 import java.lang.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
 
 public class Quadtree<Node> {
 
     private Node root; //root of Quadtree, in most cases this will be the complete Image
     private int size; //number of pixels in image (maxI x maxJ)
     private Image image; //image to construct a Quadtree from (not yet compressed)
+    private SummedAreaTable table; //integral image of this.image, gives any node's totals in O(1), see table()
     private double threshold; //threshold for compression, notes in README
     private int numNodes = 1; //number of nodes in tree (mainly used to troubleshoot)
+    private volatile Leaves leaves; //every leaf as flat arrays, null until getLeaves is called or after the tree changes
     public final int COMPRESSION_CONSTANT = 1000; //constant with which to divide meanSquaredError by to compare to threshold
     public final int EDGE_DETECTION_CONSTANT = 50; //threshold of when to fill in black for edge detection, change based on image dimensions
     
     private class Node { //Node class to hold a quadrant of pixels alike in color by this.threshold
 	
-		private MyColor meanColor; //average color from startPixel to endPixel
-		private double meanSquaredError; //average squared error from original image color to meanMyColor
-		private MyColor startPixel; //start pixel of quadrant
-		private MyColor endPixel; //end pixel of quadrant
+		private int meanColor; //average color from start pixel to end pixel, packed 0xRRGGBB
+		private double meanSquaredError; //average squared error from original image color to meanColor
+		private int startI; //row of start (top left) pixel of quadrant
+		private int startJ; //col of start (top left) pixel of quadrant
+		private int endI; //row of end (bottom right) pixel of quadrant
+		private int endJ; //col of end (bottom right) pixel of quadrant
 		private Node NE; //reference to NE child
 		private Node NW; //reference to NW child
 		private Node SW; //reference to SW child
 		private Node SE; //reference to SE child
 
-		public MyColor getColor() {return this.meanColor;}
+		public int getColor() {return this.meanColor;}
 		public double getError() {return this.meanSquaredError;}
-		public MyColor getStartPixel() {return this.startPixel;}
-		public MyColor getEndPixel() {return this.endPixel;}
+		public int getStartI() {return this.startI;}
+		public int getStartJ() {return this.startJ;}
+		public int getEndI() {return this.endI;}
+		public int getEndJ() {return this.endJ;}
 		public Node getNE() {return this.NE;}
 		public Node getNW() {return this.NW;}
 		public Node getSE() {return this.SE;}
 		public Node getSW() {return this.SW;}
 		public boolean isLeaf() {return this.NW == null;}
+		public boolean isDivisible() {return this.endI > this.startI && this.endJ > this.startJ;} //not 1x1 (or 1 wide)
 		
 		/**
-		 * Create a Node obj
-		 * @param startPixel
-		 * @param endPixel
+		 * Create a Node obj covering the inclusive rectangle (startI, startJ) to (endI, endJ)
+		 * @param startI
+		 * @param startJ
+		 * @param endI
+		 * @param endJ
 		 */
-		public Node(MyColor startPixel, MyColor endPixel) {
-			this.startPixel = startPixel;
-			this.endPixel = endPixel;
-			this.meanColor = getMeanColor(startPixel, endPixel);
-			this.meanSquaredError = getMeanSquaredError(startPixel, endPixel, this.meanColor);
+		public Node(int startI, int startJ, int endI, int endJ) {
+			this.startI = startI;
+			this.startJ = startJ;
+			this.endI = endI;
+			this.endJ = endJ;
+			this.meanColor = getMeanColor();
+			this.meanSquaredError = getMeanSquaredError(this.meanColor);
 			this.NE = null;
 			this.NW = null;
 			this.SW = null;
 			this.SE = null;
 		}
+
+		/**
+		 * Create a Node obj for cell (row, col) of a level of pyramid, taking its mean and error from there
+		 */
+		public Node(int startI, int startJ, int endI, int endJ, StatsPyramid pyramid, int level, int row, int col) {
+			this.startI = startI;
+			this.startJ = startJ;
+			this.endI = endI;
+			this.endJ = endJ;
+			this.meanColor = pyramid.getMeanColor(level, row, col);
+			this.meanSquaredError = pyramid.getMeanSquaredError(level, row, col, this.meanColor);
+		}
 		
 		/**
-		 * returns MyColor object of mean color between two points using start and end pixels
-		 * @param startPixel the top left pixel in node/quadrant
-		 * @param endPixel the bottom left pixel in node/quadrant
-		 * @return MyColor mean color of node/quadrant
+		 * returns packed mean color of this node/quadrant using its start and end pixels
+		 * @return int mean color of node/quadrant
 		 */
-		private MyColor getMeanColor(MyColor startPixel, MyColor endPixel) {
-			if (startPixel.compareTo(endPixel) == 0) { //if this node is 1x1
-				return startPixel; //mean color is normal color
-			}
-			int totalRed = 0;
-			int totalGreen = 0;
-			int totalBlue = 0;
-			int totalPixels = 1;
-			MyColor[][] colArr = image.getColorArray();
-			//from start to end pixel (for whole quadrant), increment totals to calc average
-			for (int i = this.startPixel.getI(); i <= this.endPixel.getI(); i++) {
-				for (int j = this.startPixel.getJ(); j <= this.endPixel.getJ(); j++) {
-					totalRed += colArr[i][j].getR();
-					totalGreen += colArr[i][j].getG();
-					totalBlue += colArr[i][j].getB();
-					totalPixels++;
-				}
+		private int getMeanColor() {
+			if (startI == endI && startJ == endJ) { //if this node is 1x1
+				return image.getRGB(startI, startJ); //mean color is normal color
 			}
-			int meanRed = totalRed/totalPixels; //average red val
-			int meanGreen = totalGreen/totalPixels; //average green val
-			int meanBlue = totalBlue/totalPixels; //average blue val
-			return new MyColor(meanRed, meanGreen, meanBlue); //return average color
+			//totals for whole quadrant come from four lookups each in the summed-area table
+			return table().getMeanColor(startI, startJ, endI, endJ); //return average color
 		}
 		
 		/**
 		 * returns mean squared error of original color to mean color
-		 * @param startPixel the top left pixel in node/quadrant
-		 * @param endPixel the bottom left pixel in node/quadrant
 		 * @param meanColor mean color of node/quadrant returned by getMeanColor() 
 		 * @return double mean squared error between original pixel color and node's mean color
 		 */
-		private double getMeanSquaredError(MyColor startPixel, MyColor endPixel, MyColor meanColor) {
-			if (startPixel.compareTo(endPixel) == 0) { //if this node is 1x1 return 0 (dont divide)
+		private double getMeanSquaredError(int meanColor) {
+			if (startI == endI && startJ == endJ) { //if this node is 1x1 return 0 (dont divide)
 				return 0; //mean color is normal color, no error
 			}
-			int meanRed = meanColor.getR();
-			int meanGreen = meanColor.getG();
-			int meanBlue = meanColor.getB();
-			int squaredError = 0;
-			int totalPixels = 0;
-			MyColor[][] colArr = image.getColorArray();
-			for (int i = startPixel.getI(); i <= endPixel.getI(); i++) {
-				for (int j = startPixel.getJ(); j <= endPixel.getJ(); j++) {
-					squaredError += Math.pow(((colArr[i][j].getR()) - meanRed), 2); //(og red - meanRed)^2
-					squaredError += Math.pow(((colArr[i][j].getG()) - meanGreen), 2); //(og green - meanGreen)^2
-					squaredError += Math.pow(((colArr[i][j].getB()) - meanBlue), 2); //(og blue - meanBlue)^2
-					totalPixels++;
-				}
-			}
-			return squaredError/totalPixels; //return average squared error
+			return table().getMeanSquaredError(startI, startJ, endI, endJ, meanColor); //return average squared error
 		}
 		
 		/**
 		 * divides a node (quadrant) into 4 smaller (nodes) quadrants, make them this node's children
 		 */
 		public void divideNode() {
-			MyColor[][] colArr = image.getColorArray();
-			//if this quadrant's length or width is odd
-			if (this.endPixel.getI() - this.startPixel.getI() % 2 == 0 || this.endPixel.getJ() - this.startPixel.getJ() % 2 == 0) {
-				//NW node
-				int nwEndI = ( (endPixel.getI() - startPixel.getI()) + 1 / 2) + startPixel.getI(); //row of endPixel for NW node
-				int nwEndJ = ( (endPixel.getJ() - startPixel.getJ()) + 1 / 2) + startPixel.getJ(); //col of endPixel for NW node
-				Node NW = new Node(this.startPixel, colArr[nwEndI][nwEndJ]);
-				//NE node
-				int neStartJ = ( (endPixel.getJ() - startPixel.getJ()) + 1 / 2) + startPixel.getJ(); //col of startPuxel for NE node
-				int neEndI = ( (endPixel.getI() - startPixel.getI()) + 1 / 2) + startPixel.getI(); //row of endPixel for NE node
-				Node NE = new Node(colArr[startPixel.getI()][neStartJ], colArr[neEndI][endPixel.getJ() + 1]);
-				//SW node
-				int swStartI = ( (endPixel.getI() - startPixel.getI()) + 1 / 2) + startPixel.getI() + 1; //row of startPixel for SW node
-				int swEndJ = ( (endPixel.getJ() - startPixel.getJ()) + 1 / 2) + startPixel.getJ(); //col of endPixel for SW node
-				Node SW = new Node(colArr[swStartI][startPixel.getJ()], colArr[endPixel.getI()][swEndJ]);
-				//SE node
-				int seStartI = ( (endPixel.getI() - startPixel.getI()) + 1 / 2) + startPixel.getI() + 1; //row of startPixel for SE node
-				int seStartJ = ( (endPixel.getJ() - startPixel.getJ()) + 1 / 2) + startPixel.getJ() + 1; //col of startPuxel for SE node
-				Node SE = new Node(colArr[seStartI][seStartJ], this.endPixel);
-				this.NW = NW;
-				this.NE = NE;
-				this.SE = SE;
-				this.SW = SW;
-				numNodes += 4;
-			}
-			else { //if this quadrant's length and width is even
-				//NW node
-				int nwEndI = ( (endPixel.getI() - startPixel.getI()) / 2) + startPixel.getI(); //row of endPixel for NW node
-				int nwEndJ = ( (endPixel.getJ() - startPixel.getJ()) / 2) + startPixel.getJ(); //col of endPixel for NW node
-				Node NW = new Node(this.startPixel, colArr[nwEndI][nwEndJ]);
-				
-				//NE node
-				int neStartJ = ( (endPixel.getJ() - startPixel.getJ()) / 2) + startPixel.getJ()+1; //col of startPuxel for NE node
-				int neEndI = ( (endPixel.getI() - startPixel.getI()) / 2) + startPixel.getI(); //row of endPixel for NE node
-				Node NE = new Node(colArr[startPixel.getI()][neStartJ], colArr[neEndI][endPixel.getJ()]);
-				//SW node
-				int swStartI = ( (endPixel.getI() - startPixel.getI()) / 2) + startPixel.getI() + 1; //row of startPixel for SW node
-				int swEndJ = ( (endPixel.getJ() - startPixel.getJ()) / 2) + startPixel.getJ(); //col of endPixel for SW node
-				Node SW = new Node(colArr[swStartI][startPixel.getJ()], colArr[endPixel.getI()][swEndJ]);
-				//SE node
-				int seStartI = ( (endPixel.getI() - startPixel.getI()) / 2) + startPixel.getI() + 1; //row of startPixel for SE node
-				int seStartJ = ( (endPixel.getJ() - startPixel.getJ()) / 2) + startPixel.getJ() + 1; //col of startPuxel for SE node
-				Node SE = new Node(colArr[seStartI][seStartJ], this.endPixel);
-				this.NW = NW;
-				this.NE = NE;
-				this.SE = SE;
-				this.SW = SW;
-				numNodes += 4;
-			}
+			int midI = ( (endI - startI) / 2) + startI; //last row of NW and NE nodes
+			int midJ = ( (endJ - startJ) / 2) + startJ; //last col of NW and SW nodes
+			this.NW = new Node(startI, startJ, midI, midJ);
+			this.NE = new Node(startI, midJ + 1, midI, endJ);
+			this.SW = new Node(midI + 1, startJ, endI, midJ);
+			this.SE = new Node(midI + 1, midJ + 1, endI, endJ);
+		}
+
+		/**
+		 * same as divideNode for the node at cell (row, col) of a level of pyramid, children get their mean and
+		 * error from the level below
+		 */
+		public void divideNode(StatsPyramid pyramid, int level, int row, int col) {
+			int midI = ( (endI - startI) / 2) + startI; //last row of NW and NE nodes
+			int midJ = ( (endJ - startJ) / 2) + startJ; //last col of NW and SW nodes
+			int childRow = pyramid.getChildRow(level, row);
+			int childCol = pyramid.getChildCol(level, col);
+			this.NW = new Node(startI, startJ, midI, midJ, pyramid, level + 1, childRow, childCol);
+			this.NE = new Node(startI, midJ + 1, midI, endJ, pyramid, level + 1, childRow, childCol + 1);
+			this.SW = new Node(midI + 1, startJ, endI, midJ, pyramid, level + 1, childRow + 1, childCol);
+			this.SE = new Node(midI + 1, midJ + 1, endI, endJ, pyramid, level + 1, childRow + 1, childCol + 1);
+		}
+
+		/**
+		 * recompute mean color and error after pixels under this node changed
+		 */
+		public void refresh() {
+			this.meanColor = getMeanColor();
+			this.meanSquaredError = getMeanSquaredError(this.meanColor);
+		}
+
+		/**
+		 * drop this node's children, making it a leaf
+		 */
+		public void merge() {
+			this.NE = null;
+			this.NW = null;
+			this.SW = null;
+			this.SE = null;
 		}
 
 		public String toString() {
-			return "startPixel: " + startPixel + " endPixel: " + endPixel;
+			return "start: " + startI + "," + startJ + " end: " + endI + "," + endJ;
 		}
 	
     } //end of Node class
 
+    /**
+     * Build the tree from a StatsPyramid: every quadrant's totals are summed bottom up first, then nodes are divided
+     * top down by threshold, each taking its mean and error from the pyramid
+     * @param image image to construct a Quadtree from
+     * @param threshold threshold for compression
+     */
     public Quadtree(Image image, double threshold) {
 		this.image = image;
-		this.root = new Node(this.image.getStartPixel(), this.image.getEndPixel());
+		StatsPyramid pyramid = new StatsPyramid(image);
+		this.root = new Node(0, 0, image.getHeight() - 1, image.getWidth() - 1, pyramid, 0, 0, 0);
 		this.size = image.getSize();
 		this.threshold = threshold;
-		divide(threshold); //call recursive divide
+		numNodes += recBuild(root, pyramid, 0, 0, 0, threshold);
     }
 
     /**
-     * recursively call recDivide to divide Image into quadrants (nodes) based on threshold
+     * Build the tree in parallel on the common ForkJoinPool
+     * @param image image to construct a Quadtree from
+     * @param threshold threshold for compression
+     * @param parallelCutoff nodes with this many pixels or fewer are divided sequentially by one task
+     */
+    public Quadtree(Image image, double threshold, int parallelCutoff) {
+		this.image = image;
+		StatsPyramid pyramid = new StatsPyramid(image);
+		this.root = new Node(0, 0, image.getHeight() - 1, image.getWidth() - 1, pyramid, 0, 0, 0);
+		this.size = image.getSize();
+		this.threshold = threshold;
+		numNodes += ForkJoinPool.commonPool().invoke(new DivideTask(root, pyramid, 0, 0, 0, threshold, parallelCutoff));
+    }
+
+    /**
+     * limits for a budgeted tree, building stops at whichever is reached first
+     */
+    public static class Budget {
+		public long maxLeaves = Long.MAX_VALUE; //leaves in tree
+		public long maxBytes = Long.MAX_VALUE; //size of tree as a quadtree file without deflate
+		public double targetPsnr = Double.POSITIVE_INFINITY; //stop once the render is this close to the image, in dB
+
+		/**
+		 * @param spec "leaves:N", "bytes:N" or "psnr:DB"
+		 * @throws IllegalArgumentException if spec is none of these
+		 */
+		public static Budget parse(String spec) throws IllegalArgumentException {
+			Budget budget = new Budget();
+			String[] parts = spec.split(":");
+			try {
+				if (parts.length == 2 && parts[0].equals("leaves")) {
+					budget.maxLeaves = Long.parseLong(parts[1]);
+					return budget;
+				}
+				if (parts.length == 2 && parts[0].equals("bytes")) {
+					budget.maxBytes = Long.parseLong(parts[1]);
+					return budget;
+				}
+				if (parts.length == 2 && parts[0].equals("psnr")) {
+					budget.targetPsnr = Double.parseDouble(parts[1]);
+					return budget;
+				}
+			}
+			catch (NumberFormatException e) {
+				//same message as any other bad spec
+			}
+			throw new IllegalArgumentException("budget must be leaves:N, bytes:N or psnr:DB!");
+		}
+    }
+
+    /**
+     * Build the tree to a budget instead of a threshold, in one pass. Leaves are divided greedily, the one holding
+     * the most squared error (mean squared error times area) first, until the budget is reached or no error is left.
+     * A leaf's squared error is the most that dividing under it can ever remove; ordering by what one division
+     * removes right away instead stalls on noisy areas, where only the last division down to single pixels removes
+     * much. The tree's threshold is 0, so getImage(0) and QuadtreeFile.write(..., 0, ...) give the whole tree
+     * @param image image to construct a Quadtree from
+     * @param budget leaf count, file size or PSNR to stop at
+     */
+    public Quadtree(Image image, Budget budget) {
+		this.image = image;
+		this.root = new Node(0, 0, image.getHeight() - 1, image.getWidth() - 1);
+		this.size = image.getSize();
+		this.threshold = 0;
+		divideBudget(budget);
+    }
+
+    /**
+     * divide leaves by most squared error until budget is reached
+     */
+    private void divideBudget(Budget budget) {
+		PriorityQueue<Node> queue = new PriorityQueue<Node>((a, b) -> Double.compare(area(b) * b.getError(), area(a) * a.getError()));
+		long leaves = 1;
+		long splitBits = root.isDivisible() ? 1 : 0; //nodes bigger than 1x1, each is a split bit in a quadtree file
+		double squaredError = area(root) * root.getError(); //total over the image of the tree as it stands
+		if (root.isDivisible()) {
+			queue.add(root);
+		}
+		while (!queue.isEmpty() && psnr(squaredError) < budget.targetPsnr) {
+			Node n = queue.poll();
+			if (n.getError() == 0) { //every leaf left is flat
+				break;
+			}
+			n.divideNode();
+			int newBits = 0;
+			for (Node child : List.of(n.getNW(), n.getNE(), n.getSW(), n.getSE())) {
+				newBits += child.isDivisible() ? 1 : 0;
+			}
+			if (leaves + 3 > budget.maxLeaves || QuadtreeFile.rawSize(splitBits + newBits, leaves + 3) > budget.maxBytes) {
+				n.merge(); //doesn't fit
+				break;
+			}
+			leaves += 3;
+			splitBits += newBits;
+			numNodes += 4;
+			squaredError -= area(n) * n.getError();
+			for (Node child : List.of(n.getNW(), n.getNE(), n.getSW(), n.getSE())) {
+				squaredError += area(child) * child.getError();
+				if (child.isDivisible()) {
+					queue.add(child);
+				}
+			}
+		}
+    }
+
+    private long area(Node n) {
+		return (long) (n.getEndI() - n.getStartI() + 1) * (n.getEndJ() - n.getStartJ() + 1);
+    }
+
+    /**
+     * @param squaredError total squared error over the image, summed over the three channels
+     * @return peak signal to noise ratio in dB of a render with that error
+     */
+    private double psnr(double squaredError) {
+		double mse = squaredError / (3.0 * size); //per channel sample
+		return (mse <= 0) ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    /**
+     * @return peak signal to noise ratio in dB of getImage() against the image the tree was built from
+     */
+    public double getPsnr() {
+		double[] squaredError = {0};
+		forEachLeafNode(leaf -> squaredError[0] += area(leaf) * leaf.getError());
+		return psnr(squaredError[0]);
+    }
+
+    public int getWidth() {
+		return image.getWidth();
+    }
+    public int getHeight() {
+		return image.getHeight();
+    }
+    public int getNumNodes() {
+		return numNodes;
+    }
+
+    /**
+     * shape of a built tree, for instrumentation and choosing thresholds
+     */
+    public static class Stats {
+		public int depth; //levels below the root of the deepest leaf
+		public int nodes; //nodes in tree
+		public int leaves; //leaves in tree
+		public long[] leafSizes = new long[32]; //leafSizes[k] is the number of leaves whose longer side is 2^k to 2^(k+1) - 1 pixels
+    }
+
+    /**
+     * @return depth, node and leaf counts and leaf-size histogram of the tree as built
+     */
+    public Stats getStats() {
+		Stats stats = new Stats();
+		recStats(root, 0, stats);
+		return stats;
+    }
+
+    private void recStats(Node n, int depth, Stats stats) {
+		stats.nodes++;
+		if (n.isLeaf()) {
+			int side = Math.max(n.getEndI() - n.getStartI(), n.getEndJ() - n.getStartJ()) + 1;
+			stats.leaves++;
+			stats.leafSizes[31 - Integer.numberOfLeadingZeros(side)]++;
+			stats.depth = Math.max(stats.depth, depth);
+			return;
+		}
+		recStats(n.getNW(), depth + 1, stats);
+		recStats(n.getNE(), depth + 1, stats);
+		recStats(n.getSW(), depth + 1, stats);
+		recStats(n.getSE(), depth + 1, stats);
+    }
+
+    /**
+     * call divideSubtree to divide Image into quadrants (nodes) based on threshold. Nodes divided finer than threshold
+     * asks are merged, so the tree ends up the same as a new one built at threshold, and update and redraw use it
+     * from now on
      * @param threshold, double inputed by user to set compression rate 
      */
-    //recursively divides image into quadrants based on threshold
     public void divide(double threshold) {
-		recDivide(root, threshold);
+		this.threshold = threshold;
+		numNodes += divideSubtree(root, threshold);
+		leaves = null;
     }
 
     /**
-     * recursively called to determine if a node needs to be divided. If so, it will satisfy
+     * divide Image into quadrants (nodes) based on threshold, with the four subtrees of large nodes divided in parallel
+     * @param threshold, double inputed by user to set compression rate 
+     * @param parallelCutoff nodes with this many pixels or fewer are divided sequentially by one task
+     */
+    public void divideParallel(double threshold, int parallelCutoff) {
+		this.threshold = threshold;
+		numNodes += ForkJoinPool.commonPool().invoke(new DivideTask(root, new StatsPyramid(image), 0, 0, 0, threshold, parallelCutoff));
+		leaves = null;
+    }
+
+    /**
+     * fork/join task dividing one subtree, returns the number of nodes it added so no count is shared between threads
+     */
+    private class DivideTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L; //RecursiveTask is Serializable, these are never serialized
+		private Node n; //root of subtree to divide
+		private StatsPyramid pyramid; //totals of every quadrant
+		private int level; //cell of pyramid n covers
+		private int row;
+		private int col;
+		private double t; //threshold to determine whether node should be divided
+		private int cutoff; //node area at or below which recBuild is used
+
+		public DivideTask(Node n, StatsPyramid pyramid, int level, int row, int col, double t, int cutoff) {
+			this.n = n;
+			this.pyramid = pyramid;
+			this.level = level;
+			this.row = row;
+			this.col = col;
+			this.t = t;
+			this.cutoff = cutoff;
+		}
+
+		protected Integer compute() {
+			long area = (long) (n.getEndI() - n.getStartI() + 1) * (n.getEndJ() - n.getStartJ() + 1);
+			if (area <= cutoff) {
+				return recBuild(n, pyramid, level, row, col, t);
+			}
+			if (!n.isLeaf() && n.getError()/COMPRESSION_CONSTANT <= t) {
+				return -merge(n);
+			}
+			int added = 0;
+			if (n.isDivisible() && n.isLeaf() && n.getError()/COMPRESSION_CONSTANT > t) {
+				n.divideNode(pyramid, level, row, col);
+				added += 4;
+			}
+			if (n.isLeaf()) {
+				return added;
+			}
+			int childRow = pyramid.getChildRow(level, row);
+			int childCol = pyramid.getChildCol(level, col);
+			DivideTask nw = new DivideTask(n.getNW(), pyramid, level + 1, childRow, childCol, t, cutoff);
+			DivideTask ne = new DivideTask(n.getNE(), pyramid, level + 1, childRow, childCol + 1, t, cutoff);
+			DivideTask sw = new DivideTask(n.getSW(), pyramid, level + 1, childRow + 1, childCol, t, cutoff);
+			nw.fork();
+			ne.fork();
+			sw.fork();
+			added += new DivideTask(n.getSE(), pyramid, level + 1, childRow + 1, childCol + 1, t, cutoff).compute(); //do the last one on this thread
+			added += sw.join() + ne.join() + nw.join();
+			return added;
+		}
+    }
+
+    /**
+     * determines for every node under n if it needs to be divided. If so, it will satisfy
      * 3 properties: it will not be 1x1, it is a leaf, and it's meanSquaredError divided by
-     * some compression constant will be more than a given threshold.
+     * some compression constant will be more than a given threshold. Nodes waiting to be looked at are kept on an
+     * explicit stack instead of the call stack
+     * Nodes already divided though their error is within t are merged back into one leaf.
      * @param n, node to divide into 4
      * @param t, threshold to determine whether node should be divided
+     * @return number of nodes added under n (negative if more were merged away)
      */
-    private void recDivide(Node n, double t) {
-	if (n != null) {
-	    if (n.startPixel.compareTo(n.endPixel) == -1) { //if start pixel is not end pixel, i.e. node is not 1x1
-		if (n.isLeaf()) { //if n is a leaf
-		    if (n.getError()/COMPRESSION_CONSTANT > t) { //if error is > threshold
-			n.divideNode(); //3 properties satisfied, divide node!
-		    }
-		}
-		recDivide(n.getNW(), t);
-		recDivide(n.getSW(), t);
-		recDivide(n.getNE(), t);
-		recDivide(n.getSE(), t);
-	    }
-	}
+    private int divideSubtree(Node n, double t) {
+		int added = 0;
+		ArrayDeque<Node> stack = new ArrayDeque<Node>();
+		stack.push(n);
+		while (!stack.isEmpty()) {
+			Node current = stack.pop();
+			if (!current.isDivisible()) { //if start pixel is end pixel, i.e. node is 1x1
+				continue;
+			}
+			if (!current.isLeaf() && current.getError()/COMPRESSION_CONSTANT <= t) { //finer than t asks
+				added -= merge(current);
+				continue;
+			}
+			if (current.isLeaf() && current.getError()/COMPRESSION_CONSTANT > t) { //leaf with error > threshold
+				current.divideNode(); //3 properties satisfied, divide node!
+				added += 4;
+			}
+			if (!current.isLeaf()) {
+				stack.push(current.getSE());
+				stack.push(current.getNE());
+				stack.push(current.getSW());
+				stack.push(current.getNW());
+			}
+		}
+		return added;
+    }
+
+    /**
+     * make n one leaf, dropping everything under it
+     * @return number of nodes removed
+     */
+    private int merge(Node n) {
+		int removed = countNodes(n) - 1;
+		n.merge();
+		return removed;
+    }
+
+    /**
+     * same as divideSubtree for a node at cell (row, col) of a level of pyramid, new nodes get their mean and error
+     * from the pyramid
+     * @return number of nodes added under n
+     */
+    private int recBuild(Node n, StatsPyramid pyramid, int level, int row, int col, double t) {
+		if (!n.isDivisible()) {
+			return 0;
+		}
+		if (!n.isLeaf() && n.getError()/COMPRESSION_CONSTANT <= t) {
+			return -merge(n);
+		}
+		int added = 0;
+		if (n.isLeaf() && n.getError()/COMPRESSION_CONSTANT > t) {
+			n.divideNode(pyramid, level, row, col);
+			added += 4;
+		}
+		if (n.isLeaf()) {
+			return added;
+		}
+		int childRow = pyramid.getChildRow(level, row);
+		int childCol = pyramid.getChildCol(level, col);
+		added += recBuild(n.getNW(), pyramid, level + 1, childRow, childCol, t);
+		added += recBuild(n.getSW(), pyramid, level + 1, childRow + 1, childCol, t);
+		added += recBuild(n.getNE(), pyramid, level + 1, childRow, childCol + 1, t);
+		added += recBuild(n.getSE(), pyramid, level + 1, childRow + 1, childCol + 1, t);
+		return added;
+    }
+
+    /**
+     * returns the summed-area table of this.image, built the first time a node needs totals the pyramid can't
+     * give (update, divide, budget builds). Trees that are only built and rendered never make one
+     */
+    private SummedAreaTable table() {
+		if (table == null) {
+			table = new SummedAreaTable(image);
+		}
+		return table;
+    }
+
+    /**
+     * bring the tree up to date after pixels of its image in the inclusive rectangle (startI, startJ) to (endI, endJ)
+     * changed, e.g. after pasting an overlay with Image.setRGB. Only nodes overlapping the rectangle are looked at:
+     * each gets its mean and error again, and is divided or merged by the tree's threshold, so the tree ends up the
+     * same as a new one built from the changed image, at a cost that follows the rectangle and not the image
+     * @return inclusive bounds {startI, startJ, endI, endJ} of the area whose render changed (leaves can reach past
+     * the rectangle), to pass to redraw, or null if nothing changed
+     */
+    public int[] update(int startI, int startJ, int endI, int endJ) {
+		startI = Math.max(startI, 0);
+		startJ = Math.max(startJ, 0);
+		endI = Math.min(endI, image.getHeight() - 1);
+		endJ = Math.min(endJ, image.getWidth() - 1);
+		if (startI > endI || startJ > endJ) {
+			return null;
+		}
+		if (table == null) {
+			table(); //built from the pixels as they are now, nothing to patch
+		}
+		else {
+			table.update(startI, startJ, endI, endJ);
+		}
+		int[] dirty = {Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1};
+		numNodes += recUpdate(root, startI, startJ, endI, endJ, dirty);
+		if (dirty[2] < 0) {
+			return null;
+		}
+		leaves = null; //a leaf changed
+		return dirty;
+    }
+
+    /**
+     * re-evaluate the subtree under n if it overlaps the changed rectangle, growing dirty to cover every node whose
+     * render changed
+     * @return number of nodes added (negative if removed)
+     */
+    private int recUpdate(Node n, int startI, int startJ, int endI, int endJ, int[] dirty) {
+		if (n.getEndI() < startI || n.getStartI() > endI || n.getEndJ() < startJ || n.getStartJ() > endJ) {
+			return 0; //nothing under n changed
+		}
+		int oldColor = n.getColor();
+		n.refresh();
+		boolean divided = n.isDivisible() && n.getError()/COMPRESSION_CONSTANT > threshold;
+		if (!divided && !n.isLeaf()) { //changes smoothed n out, it is one leaf now
+			addDirty(n, dirty);
+			return -merge(n);
+		}
+		if (divided && n.isLeaf()) { //changes added detail, divide as a new tree would
+			addDirty(n, dirty);
+			return divideSubtree(n, threshold);
+		}
+		if (n.isLeaf()) {
+			if (n.getColor() != oldColor) {
+				addDirty(n, dirty);
+			}
+			return 0;
+		}
+		int added = 0;
+		added += recUpdate(n.getNW(), startI, startJ, endI, endJ, dirty);
+		added += recUpdate(n.getNE(), startI, startJ, endI, endJ, dirty);
+		added += recUpdate(n.getSW(), startI, startJ, endI, endJ, dirty);
+		added += recUpdate(n.getSE(), startI, startJ, endI, endJ, dirty);
+		return added;
+    }
+
+    private void addDirty(Node n, int[] dirty) {
+		dirty[0] = Math.min(dirty[0], n.getStartI());
+		dirty[1] = Math.min(dirty[1], n.getStartJ());
+		dirty[2] = Math.max(dirty[2], n.getEndI());
+		dirty[3] = Math.max(dirty[3], n.getEndJ());
+    }
+
+    private int countNodes(Node n) {
+		if (n.isLeaf()) {
+			return 1;
+		}
+		return 1 + countNodes(n.getNW()) + countNodes(n.getNE()) + countNodes(n.getSW()) + countNodes(n.getSE());
+    }
+
+    /**
+     * fill the leaves overlapping the inclusive rectangle (startI, startJ) to (endI, endJ) into target, clipped to
+     * it. Brings a getImage() render up to date after update, touching only the area update returned
+     * @param target image of the same size as this tree's image
+     */
+    public void redraw(Image target, int startI, int startJ, int endI, int endJ) {
+		forEachLeaf(startI, startJ, endI, endJ, target::fillRect);
+    }
+
+    /**
+     * receives the part of a leaf inside a rectangle, same arguments as Image.fillRect
+     */
+    public interface LeafConsumer {
+		void accept(int startI, int startJ, int endI, int endJ, int rgb);
+    }
+
+    /**
+     * hand every leaf overlapping the inclusive rectangle (startI, startJ) to (endI, endJ), clipped to it, to
+     * consumer in preorder (NW, NE, SW, SE)
+     */
+    public void forEachLeaf(int startI, int startJ, int endI, int endJ, LeafConsumer consumer) {
+		if (startI <= 0 && startJ <= 0 && endI >= image.getHeight() - 1 && endJ >= image.getWidth() - 1) {
+			//whole image, read the leaf index instead of walking the tree
+			Leaves index = getLeaves();
+			int[] rects = index.rects;
+			for (int k = 0; k < index.count; k++) {
+				consumer.accept(rects[4 * k], rects[4 * k + 1], rects[4 * k + 2], rects[4 * k + 3], index.colors[k]);
+			}
+			return;
+		}
+		ArrayDeque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node n = stack.pop();
+			if (n.getEndI() < startI || n.getStartI() > endI || n.getEndJ() < startJ || n.getStartJ() > endJ) {
+				continue;
+			}
+			if (n.isLeaf()) {
+				consumer.accept(Math.max(n.getStartI(), startI), Math.max(n.getStartJ(), startJ),
+					Math.min(n.getEndI(), endI), Math.min(n.getEndJ(), endJ), n.getColor());
+				continue;
+			}
+			pushChildren(stack, n);
+		}
+    }
+
+    /**
+     * push the children of n so they come off the stack in preorder (NW, NE, SW, SE)
+     */
+    private void pushChildren(ArrayDeque<Node> stack, Node n) {
+		stack.push(n.getSE());
+		stack.push(n.getSW());
+		stack.push(n.getNE());
+		stack.push(n.getNW());
+    }
+
+    /**
+     * hand every leaf node to visit in preorder (NW, NE, SW, SE), walking the tree with an explicit stack
+     */
+    private void forEachLeafNode(Consumer<Node> visit) {
+		ArrayDeque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node n = stack.pop();
+			if (n.isLeaf()) {
+				visit.accept(n);
+			}
+			else {
+				pushChildren(stack, n);
+			}
+		}
+    }
+
+    /**
+     * every leaf of the tree as flat arrays of primitives, in preorder (NW, NE, SW, SE). See getLeaves, don't
+     * change the arrays
+     */
+    public static class Leaves {
+		public int count; //number of leaves
+		public int[] rects; //rects[4 * k] to rects[4 * k + 3] are startI, startJ, endI, endJ of leaf k
+		public int[] colors; //colors[k] is the packed meanColor of leaf k
     }
 
     /**
-     * returns new Image with properties: 2d MyColor array, width, and height to be returned
+     * returns the leaf index, built with one walk over the tree the first time it is needed and kept until the tree
+     * changes (divide, divideParallel, update), so renders and filters of the same tree read arrays instead of
+     * walking the tree again
+     * @return every leaf of the tree
+     */
+    public Leaves getLeaves() {
+		Leaves index = leaves;
+		if (index == null) {
+			index = buildLeaves();
+			leaves = index;
+		}
+		return index;
+    }
+
+    private Leaves buildLeaves() {
+		Leaves index = new Leaves();
+		int capacity = 1 + 3 * (numNodes - 1) / 4; //every division turns 1 leaf into 4
+		index.rects = new int[4 * capacity];
+		index.colors = new int[capacity];
+		forEachLeafNode(n -> {
+			int k = index.count++;
+			if (k == index.colors.length) { //numNodes was off, grow
+				index.rects = Arrays.copyOf(index.rects, 8 * k + 4);
+				index.colors = Arrays.copyOf(index.colors, 2 * k + 1);
+			}
+			index.rects[4 * k] = n.getStartI();
+			index.rects[4 * k + 1] = n.getStartJ();
+			index.rects[4 * k + 2] = n.getEndI();
+			index.rects[4 * k + 3] = n.getEndJ();
+			index.colors[k] = n.getColor();
+		});
+		return index;
+    }
+
+    /**
+     * returns new Image with properties: packed pixel array, width, and height to be returned
      * to main for display
      * @return Image, "compressed" image of original
      */
     public Image getImage() {       	
-		ArrayList<Node> leaves = new ArrayList<Node>(); //create new temp arrayList with every leaf
-		
-		leaves = getAllLeavesRec(root, leaves); //call helper method to populate array with only leaves (iterate through tree)
+		return new RenderPipeline(this).render(); //fill every leaf with its meanColor
+    }
+
+    /**
+     * returns the image this tree would give if it had been built with threshold t. Only
+     * thresholds at or above the one this tree was built with add detail, lower ones render at this tree's leaves
+     * @param t threshold to render at
+     * @return Image, "compressed" image of original
+     */
+    public Image getImage(double t) {
+		return getImages(new double[] {t})[0];
+    }
+
+    /**
+     * renders several compression levels from this one tree in a single traversal, so one tree built with the
+     * smallest threshold replaces building a tree per threshold. A node is drawn for threshold t where descent
+     * would have stopped, i.e. it is a leaf or its error/COMPRESSION_CONSTANT <= t
+     * @param thresholds thresholds to render at, in any order
+     * @return Image[] one "compressed" image per threshold, in the same order as thresholds
+     */
+    public Image[] getImages(double[] thresholds) {
+		return renderThresholds(thresholds, false);
+    }
+
+    /**
+     * same as getImages, with the outline of every drawn node in black
+     * @param thresholds thresholds to render at, in any order
+     * @return Image[] one outlined "compressed" image per threshold, in the same order as thresholds
+     */
+    public Image[] getImagesOutlined(double[] thresholds) {
+		return renderThresholds(thresholds, true);
+    }
+
+    private Image[] renderThresholds(double[] thresholds, boolean outline) {
+		double[] sorted = thresholds.clone();
+		Arrays.sort(sorted); //smallest first, so thresholds still descending at any node are always a prefix
+		Image[] sortedImages = new Image[sorted.length];
+		for (int k = 0; k < sorted.length; k++) {
+			sortedImages[k] = new Image(image.getWidth(), image.getHeight());
+		}
+		recRenderThresholds(root, sorted, sortedImages, sorted.length, outline);
 		
-		//populate empty 2d array with meanMyColor based on start/end pixel of each leaf node
-		MyColor[][] newImageArr =  new MyColor[image.getHeight()][image.getWidth()];
-		for (int n = 0; n < leaves.size(); n++) {
-			Node currentLeaf = leaves.get(n);
-
-			int startI = currentLeaf.getStartPixel().getI(); //i index of startpixel of this node
-			int startJ = currentLeaf.getStartPixel().getJ(); //j index of startpixel of this node
-			int endI = currentLeaf.getEndPixel().getI(); //i index of endPixel of this node
-			int endJ = currentLeaf.getEndPixel().getJ(); //j index of endpixel of this node
-			
-			//set quadrant of this leaf to meanMyColor of this leaf
-			for (int i = startI; i <= endI; i++) { //for every row in node
-				for (int j = startJ; j <= endJ; j++) { //for every col in node
-					//set pixel to mean color
-					newImageArr[i][j] = currentLeaf.getColor();
+		//put images back in the order thresholds were given
+		Image[] images = new Image[thresholds.length];
+		for (int k = 0; k < thresholds.length; k++) {
+			images[k] = sortedImages[Arrays.binarySearch(sorted, thresholds[k])];
+		}
+		return images;
+    }
+
+    /**
+     * @param n node to draw or descend through
+     * @param sorted thresholds smallest first
+     * @param images one image per sorted threshold
+     * @param active sorted[0..active) have not been drawn yet in this subtree
+     * @param outline true to outline drawn nodes
+     */
+    private void recRenderThresholds(Node n, double[] sorted, Image[] images, int active, boolean outline) {
+		int stop = 0; //first threshold that stops at this node
+		if (!n.isLeaf()) {
+			double error = n.getError()/COMPRESSION_CONSTANT;
+			while (stop < active && sorted[stop] < error) {
+				stop++;
+			}
+		}
+		for (int k = stop; k < active; k++) {
+			images[k].fillRect(n.getStartI(), n.getStartJ(), n.getEndI(), n.getEndJ(), n.getColor());
+			if (outline) {
+				outlineRect(images[k], n.getStartI(), n.getStartJ(), n.getEndI(), n.getEndJ());
+			}
+		}
+		if (stop > 0) { //smaller thresholds keep going
+			recRenderThresholds(n.getNW(), sorted, images, stop, outline);
+			recRenderThresholds(n.getNE(), sorted, images, stop, outline);
+			recRenderThresholds(n.getSW(), sorted, images, stop, outline);
+			recRenderThresholds(n.getSE(), sorted, images, stop, outline);
+		}
+    }
+
+    /**
+     * renders only rows startI to endI of getImage(t) (getImagesOutlined if outline), for writing an image a few
+     * rows at a time without holding the whole frame. Only nodes crossing those rows are visited
+     * @param t threshold to render at, Double.NEGATIVE_INFINITY to render every leaf like getImage()
+     * @param outline true to outline drawn nodes
+     * @param startI first row to render
+     * @param endI last row to render
+     * @param dest packed pixels of the rows, row startI first, width pixels per row
+     */
+    public void renderRows(double t, boolean outline, int startI, int endI, int[] dest) {
+		recRenderRows(root, t, outline, startI, endI, dest);
+    }
+
+    private void recRenderRows(Node n, double t, boolean outline, int startI, int endI, int[] dest) {
+		if (n.getEndI() < startI || n.getStartI() > endI) {
+			return;
+		}
+		if (!n.isLeaf() && t < n.getError()/COMPRESSION_CONSTANT) { //same stop as recRenderThresholds
+			recRenderRows(n.getNW(), t, outline, startI, endI, dest);
+			recRenderRows(n.getNE(), t, outline, startI, endI, dest);
+			recRenderRows(n.getSW(), t, outline, startI, endI, dest);
+			recRenderRows(n.getSE(), t, outline, startI, endI, dest);
+			return;
+		}
+		int width = image.getWidth();
+		int top = Math.max(n.getStartI(), startI);
+		int bottom = Math.min(n.getEndI(), endI);
+		for (int i = top; i <= bottom; i++) {
+			int row = (i - startI) * width;
+			Arrays.fill(dest, row + n.getStartJ(), row + n.getEndJ() + 1, n.getColor());
+			if (outline) {
+				dest[row + n.getStartJ()] = 0; //left col
+				dest[row + n.getEndJ()] = 0; //right col
+				if (i == n.getStartI() || i == n.getEndI()) { //top or bottom row, only in the rows that have it
+					Arrays.fill(dest, row + n.getStartJ(), row + n.getEndJ() + 1, 0);
 				}
 			}
 		}
-		
-		//make image object to return 'compressed' image
-		Image newImage = new Image(newImageArr, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * walks the tree in preorder (NW, NE, SW, SE) handing its structure to a QuadtreeFile encoder
+     * @param encoder encoder collecting split bits and leaf colors
+     * @param t threshold to store the tree at, descent stops where getImage(t) would stop
+     */
+    public void encode(QuadtreeFile.Encoder encoder, double t) {
+		recEncode(root, encoder, t);
+    }
+
+    private void recEncode(Node n, QuadtreeFile.Encoder encoder, double t) {
+		boolean divided = !n.isLeaf() && n.getError()/COMPRESSION_CONSTANT > t;
+		if (n.isDivisible()) { //1x1 nodes can't divide, so they get no split bit
+			encoder.writeSplit(divided);
+		}
+		if (divided) {
+			recEncode(n.getNW(), encoder, t);
+			recEncode(n.getNE(), encoder, t);
+			recEncode(n.getSW(), encoder, t);
+			recEncode(n.getSE(), encoder, t);
+		}
+		else {
+			encoder.writeLeaf(n.getColor());
+		}
+    }
+
+    /**
+     * walks the tree breadth first (NW, NE, SW, SE within each parent) handing it to a ProgressiveFile encoder,
+     * root color first, so every level of detail is written before the next one starts
+     * @param encoder encoder collecting split bits and child colors
+     * @param t threshold to store the tree at, descent stops where getImage(t) would stop
+     */
+    public void encodeProgressive(ProgressiveFile.Encoder encoder, double t) throws IOException {
+		encoder.writeRoot(root.getColor());
+		ArrayDeque<Node> queue = new ArrayDeque<Node>();
+		if (root.isDivisible()) { //1x1 nodes can't divide, so they get no record
+			queue.add(root);
+		}
+		int[] childColors = new int[4];
+		while (!queue.isEmpty()) {
+			Node n = queue.poll();
+			boolean divided = !n.isLeaf() && n.getError()/COMPRESSION_CONSTANT > t;
+			if (divided) {
+				List<Node> children = List.of(n.getNW(), n.getNE(), n.getSW(), n.getSE());
+				for (int k = 0; k < 4; k++) {
+					childColors[k] = children.get(k).getColor();
+					if (children.get(k).isDivisible()) {
+						queue.add(children.get(k));
+					}
+				}
+			}
+			encoder.writeNode(divided, childColors);
+		}
+    }
+
+    /**
+     * renders only a rectangle of the image at a given zoom, for previews of big images. Descends only into nodes
+     * that overlap the rectangle and stops at nodes that cover one output pixel or less, using their mean color,
+     * so the cost depends on the output size and not on the image size. Output pixel (y, x) shows the node under
+     * the image point at its center, (top + (y + 0.5) / scale, left + (x + 0.5) / scale)
+     * @param top first row of rectangle
+     * @param left first col of rectangle
+     * @param regionHeight rows in rectangle
+     * @param regionWidth cols in rectangle
+     * @param scale output pixels per image pixel, e.g. 0.25 to shrink 4 times
+     * @return Image of ceil(regionHeight * scale) by ceil(regionWidth * scale) pixels
+     * @throws IllegalArgumentException if the rectangle is not inside the image, scale is not positive, or the output
+     * would not fit one image
+     */
+    public Image getRegion(int top, int left, int regionHeight, int regionWidth, double scale) throws IllegalArgumentException {
+		if (top < 0 || left < 0 || regionHeight < 1 || regionWidth < 1 || top + regionHeight > image.getHeight() || left + regionWidth > image.getWidth()) {
+			throw new IllegalArgumentException("region must be inside the image!");
+		}
+		if (!(scale > 0)) {
+			throw new IllegalArgumentException("scale must be more than 0!");
+		}
+		double outHeight = Math.ceil(regionHeight * scale);
+		double outWidth = Math.ceil(regionWidth * scale);
+		if (outHeight * outWidth > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("region is too big to render at that scale!");
+		}
+		Image newImage = new Image((int) outWidth, (int) outHeight);
+		recRenderRegion(root, newImage, top, left, top + regionHeight - 1, left + regionWidth - 1, scale);
 		return newImage;
     }
 
+    private void recRenderRegion(Node n, Image newImage, int top, int left, int bottom, int right, double scale) {
+		//skip nodes outside the rectangle
+		if (n.getEndI() < top || n.getStartI() > bottom || n.getEndJ() < left || n.getStartJ() > right) {
+			return;
+		}
+		boolean small = (n.getEndI() - n.getStartI() + 1) * scale <= 1 && (n.getEndJ() - n.getStartJ() + 1) * scale <= 1;
+		if (n.isLeaf() || small) {
+			//output pixels whose centers land in this node
+			int outStartI = Math.max(0, (int) Math.ceil((Math.max(n.getStartI(), top) - top) * scale - 0.5));
+			int outEndI = Math.min(newImage.getHeight(), (int) Math.ceil((Math.min(n.getEndI(), bottom) + 1 - top) * scale - 0.5)) - 1;
+			int outStartJ = Math.max(0, (int) Math.ceil((Math.max(n.getStartJ(), left) - left) * scale - 0.5));
+			int outEndJ = Math.min(newImage.getWidth(), (int) Math.ceil((Math.min(n.getEndJ(), right) + 1 - left) * scale - 0.5)) - 1;
+			if (outStartI <= outEndI && outStartJ <= outEndJ) {
+				newImage.fillRect(outStartI, outStartJ, outEndI, outEndJ, n.getColor());
+			}
+			return;
+		}
+		recRenderRegion(n.getNW(), newImage, top, left, bottom, right, scale);
+		recRenderRegion(n.getNE(), newImage, top, left, bottom, right, scale);
+		recRenderRegion(n.getSW(), newImage, top, left, bottom, right, scale);
+		recRenderRegion(n.getSE(), newImage, top, left, bottom, right, scale);
+    }
+
 	/**
-     * returns new shaded Image with properties: 2d MyColor array, width, and height to be returned
+     * returns new shaded Image with properties: packed pixel array, width, and height to be returned
      * to main for display
 	 * @param shadeFactor the key to shade or invert the image
      * @return Image, "compressed" image of original
      */
 	public Image getImageShaded(double shadeFactor) {
-		ArrayList<Node> leaves = new ArrayList<Node>(); //create new temp arrayList with every leaf
-		
-		leaves = getAllLeavesRec(root, leaves); //call helper method to populate array with only leaves (iterate through tree)
-		
-		//populate empty 2d array with meanMyColor based on start/end pixel of each leaf node
-		MyColor[][] newImageArr =  new MyColor[image.getHeight()][image.getWidth()];
-		for (int n = 0; n < leaves.size(); n++) {
-			Node currentLeaf = leaves.get(n);
-
-			int startI = currentLeaf.getStartPixel().getI(); //i index of startpixel of this node
-			int startJ = currentLeaf.getStartPixel().getJ(); //j index of startpixel of this node
-			int endI = currentLeaf.getEndPixel().getI(); //i index of endPixel of this node
-			int endJ = currentLeaf.getEndPixel().getJ(); //j index of endpixel of this node
-			
-			//set quadrant of this leaf to meanMyColor of this leaf
-			for (int i = startI; i <= endI; i++) { //for every row in node
-				for (int j = startJ; j <= endJ; j++) { //for every col in node
-					//set pixel to mean color
-					newImageArr[i][j] = currentLeaf.getColor();
-				}
-			}
-		}
-		
-		//make image object to return 'compressed' image
-		Image newImage = new Image(newImageArr, image.getWidth(), image.getHeight());
-		newImage.shade(shadeFactor);
-		return newImage;
+		return getImageTransformed(MyColor.shader(shadeFactor));
+	}
+
+	/**
+     * returns new Image with every leaf filled with its mean color put through op. op runs once per leaf,
+     * not once per pixel
+	 * @param op operation on packed colors, e.g. MyColor.shader(0.5) or MyColor::greyScale
+     * @return Image, "compressed" image of original with op applied
+     */
+	public Image getImageTransformed(IntUnaryOperator op) {
+		return new RenderPipeline(this).transform(op).render();
 	}
 
     /**
-     * returns new Image with outline edges on nodes/quadrants and properties: 2d MyColor array, width, and height to be returned
+     * returns new Image with outline edges on nodes/quadrants and properties: packed pixel array, width, and height to be returned
      * to main for display
      * @return Image, "compressed" image of original with outlined nodes/quadrants
      */
     public Image getImageOutlined() {       	
-		ArrayList<Node> leaves = new ArrayList<Node>();	//create new temp arrayList with every leaf
-		
-		leaves = getAllLeavesRec(root, leaves);	//call helper method to populate array with only leaves (iterate through tree)
-
-		//populate empty 2d array with meanMyColor based on start/end pixel of each leaf node
-		MyColor[][] newImageArr =  new MyColor[image.getHeight()][image.getWidth()];
-		for (int n = 0; n < leaves.size(); n++) {
-			Node currentLeaf = leaves.get(n);
-
-			int startI = currentLeaf.getStartPixel().getI(); //i index of startpixel of this node
-			int startJ = currentLeaf.getStartPixel().getJ(); //j index of startpixel of this node
-			int endI = currentLeaf.getEndPixel().getI(); //i index of endPixel of this node
-			int endJ = currentLeaf.getEndPixel().getJ(); //j index of endpixel of this node
-
-			//set quadrant of this leaf to outline OR meanColor of this leaf
-			for (int i = startI; i <= endI; i++) { //for every row in node
-				for (int j = startJ; j <= endJ; j++) { //for every col in node
-					if (i == startI || i == endI || j == startJ || j == endJ) { //if outline or 1x1
-						newImageArr[i][j] = new MyColor(0, 0, 0, i, j); //make pixel (outline) black
-					}
-					else { //set pixel to mean color
-						newImageArr[i][j] = currentLeaf.getColor();
-					}
-				}
-			}
-		}
-		//make image object to return 'compressed' image
-		Image newImage = new Image(newImageArr, image.getWidth(), image.getHeight());
-		return newImage;
+		return new RenderPipeline(this).outline().render();
     }
 
 	/**
-     * returns new Image with outline edges on nodes/quadrants and properties: 2d MyColor array, width, and height to be returned
+     * returns new Image with outline edges on nodes/quadrants and properties: packed pixel array, width, and height to be returned
      * to main for display
      * @return Image, "compressed" image of original with outlined nodes/quadrants
      */
     public Image getImageShadedOutlined(double shadeFactor) {       	
-		ArrayList<Node> leaves = new ArrayList<Node>();	//create new temp arrayList with every leaf
-		
-		leaves = getAllLeavesRec(root, leaves);	//call helper method to populate array with only leaves (iterate through tree)
-
-		//populate empty 2d array with meanMyColor based on start/end pixel of each leaf node
-		MyColor[][] newImageArr =  new MyColor[image.getHeight()][image.getWidth()];
-		for (int n = 0; n < leaves.size(); n++) {
-			Node currentLeaf = leaves.get(n);
-
-			int startI = currentLeaf.getStartPixel().getI(); //i index of startpixel of this node
-			int startJ = currentLeaf.getStartPixel().getJ(); //j index of startpixel of this node
-			int endI = currentLeaf.getEndPixel().getI(); //i index of endPixel of this node
-			int endJ = currentLeaf.getEndPixel().getJ(); //j index of endpixel of this node
-
-			//set quadrant of this leaf to outline OR meanColor of this leaf
-			for (int i = startI; i <= endI; i++) { //for every row in node
-				for (int j = startJ; j <= endJ; j++) { //for every col in node
-					if (i == startI || i == endI || j == startJ || j == endJ) { //if outline or 1x1
-						newImageArr[i][j] = new MyColor(0, 0, 0, i, j); //make pixel (outline) black
-					}
-					else { //set pixel to mean color
-						newImageArr[i][j] = currentLeaf.getColor();
-					}
-				}
-			}
-		}
-		//make image object to return 'compressed' image
-		Image newImage = new Image(newImageArr, image.getWidth(), image.getHeight());
-		newImage.shade(shadeFactor);
-		return newImage;
+		return getImageTransformedOutlined(MyColor.shader(shadeFactor));
+    }
+
+    /**
+     * same as getImageTransformed with every leaf outlined, the outline is black put through op
+     * @param op operation on packed colors
+     * @return Image, "compressed" image of original with op applied and outlined nodes/quadrants
+     */
+    public Image getImageTransformedOutlined(IntUnaryOperator op) {       	
+		return new RenderPipeline(this).outline().transform(op).render();
     }
 
     /**
@@ -370,14 +995,7 @@ public class Quadtree<Node> {
      * @return Image with edge detection filter
      */
     public Image getImageEdgeDetected(double[][] edgeDetectionFilter) {       	
-		MyColor[][] newImageArr = this.getImage().getColorArray();
-			
-		newImageArr = edgeDetection(edgeDetectionFilter, newImageArr); //edge detect all nodes
-		
-		
-		//make image object to return 'compressed' image
-		Image newImage = new Image(newImageArr, image.getWidth(), image.getHeight());
-		return newImage;
+		return new RenderPipeline(this).edgeDetection(edgeDetectionFilter).render(); //rendered and filtered in one frame
     }
 
 	 /**
@@ -386,266 +1004,131 @@ public class Quadtree<Node> {
      * @return Image with edge detection filter
      */
     public Image getImageEdgeDetectedOutlined(double[][] edgeDetectionFilter) {       	
-		ArrayList<Node> leaves = new ArrayList<Node>(); //create new temp arrayList with every leaf
-		
-		leaves = getAllLeavesRec(root, leaves);	//call helper method to populate array with only leaves (iterate through tree)
-		//populate empty 2d array with meanMyColor based on start/end pixel of each leaf node
-		MyColor[][] newImageArr =  new MyColor[image.getHeight()][image.getWidth()];
+		return new RenderPipeline(this).edgeDetection(edgeDetectionFilter).outline().render();
+    }
 
-		for (int n = 0; n < leaves.size(); n++) {
-			
-			Node currentLeaf = leaves.get(n);
-			int startI = currentLeaf.getStartPixel().getI(); //i index of startpixel of this node
-			int startJ = currentLeaf.getStartPixel().getJ(); //j index of startpixel of this node
-			int endI = currentLeaf.getEndPixel().getI(); //i index of endPixel of this node
-			int endJ = currentLeaf.getEndPixel().getJ(); //j index of endpixel of this node
-			
-			
-			//set quadrant of this leaf to meanMyColor of this leaf
-			for (int i = startI; i <= endI; i++) { //for every row in node
-				for (int j = startJ; j <= endJ; j++) { //for every col in node
-					//set pixel to mean color
-					newImageArr[i][j] = currentLeaf.getColor();
-				}
-			}
-		}
-			
-		newImageArr = edgeDetection(edgeDetectionFilter, newImageArr); //edge detect all nodes
+    /**
+     * draws the border of every leaf in black over an image rendered from this tree
+     * @param newImage image to draw outlines onto
+     */
+    public void outline(Image newImage) {
+		Leaves index = getLeaves(); //every leaf, without walking the tree again
+		int[] rects = index.rects;
 
-		for (int n = 0; n < leaves.size(); n++) {
-			Node currentLeaf = leaves.get(n);
+		for (int k = 0; k < index.count; k++) {
+			int startI = rects[4 * k]; //i index of startpixel of this node
+			int startJ = rects[4 * k + 1]; //j index of startpixel of this node
+			int endI = rects[4 * k + 2]; //i index of endPixel of this node
+			int endJ = rects[4 * k + 3]; //j index of endpixel of this node
 
-			int startI = currentLeaf.getStartPixel().getI(); //i index of startpixel of this node
-			int startJ = currentLeaf.getStartPixel().getJ(); //j index of startpixel of this node
-			int endI = currentLeaf.getEndPixel().getI(); //i index of endPixel of this node
-			int endJ = currentLeaf.getEndPixel().getJ(); //j index of endpixel of this node
-			
-			//set quadrant of this leaf to meanMyColor of this leaf
-			for (int i = startI; i <= endI; i++) { //for every row in node
-				for (int j = startJ; j <= endJ; j++) { //for every col in node
-					
-					if (i == startI || i == endI || j == startJ || j == endJ) { //if outline or 1x1
-						newImageArr[i][j] = new MyColor(0, 0, 0, i, j); //make pixel (outline) black
-					}
-				}
-			}
-			
+			outlineRect(newImage, startI, startJ, endI, endJ);
 		}
+    }
 
-		//make image object to return 'compressed' image
-		Image newImage = new Image(newImageArr, image.getWidth(), image.getHeight());
-		return newImage;
+    /**
+     * make pixels on the edge of a quadrant (outline) black
+     */
+    private void outlineRect(Image newImage, int startI, int startJ, int endI, int endJ) {
+		outlineRect(newImage, startI, startJ, endI, endJ, 0);
+    }
+
+    /**
+     * make pixels on the edge of a quadrant rgb, also used by RenderPipeline
+     */
+    static void outlineRect(Image newImage, int startI, int startJ, int endI, int endJ, int rgb) {
+		newImage.fillRect(startI, startJ, startI, endJ, rgb); //top row
+		newImage.fillRect(endI, startJ, endI, endJ, rgb); //bottom row
+		newImage.fillRect(startI, startJ, endI, startJ, rgb); //left col
+		newImage.fillRect(startI, endJ, endI, endJ, rgb); //right col
     }
 
     /**
-     * returns 2d array of MyColor objects to represent image with edge detection filter 
+     * returns packed pixel array to represent image with edge detection filter 
      * @param edgeDetectionFilter 2d array of doubles to hold the color weights of every pixel
-     * @param colorArray, original image MyColor array to apply filter to
-     * @return 2d MyColor array of original Image with edgeDetectionFilter applied
+     * @param newImageArr, packed pixels of image rendered from this tree to apply filter to
+     * @return packed pixels of original Image with edgeDetectionFilter applied
      */
-    public MyColor[][] edgeDetection(double[][] edgeDetectionFilter, MyColor[][] newImageArr) {
+    public int[] edgeDetection(double[][] edgeDetectionFilter, int[] newImageArr) {
 
-		MyColor[][] temp = new MyColor[newImageArr.length][newImageArr[0].length];
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] temp = new Convolution(edgeDetectionFilter).apply(newImageArr, width, height); //filter everything in parallel bands
 		
-		ArrayList<Node> leaves = new ArrayList<Node>(); //create new temp arrayList with every leaf
-		
-		leaves = getAllLeavesRec(root, leaves);	//call helper method to populate array with only leaves (iterate through tree)
-		
-		//populate empty 2d array with meanMyColor based on start/end pixel of each leaf node
+		Leaves index = getLeaves(); //every leaf, without walking the tree again
+		int[] rects = index.rects;
 
-		for (int n = 0; n < leaves.size(); n++) {
-			
-			Node currentLeaf = leaves.get(n);
-			int currentLeafHeight = currentLeaf.getEndPixel().getI() - currentLeaf.getStartPixel().getI() + 1;
-			int currentLeafWidth = currentLeaf.getEndPixel().getJ() - currentLeaf.getStartPixel().getJ() + 1;
-			
-			int startI = currentLeaf.getStartPixel().getI(); //i index of startpixel of this node
-			int startJ = currentLeaf.getStartPixel().getJ(); //j index of startpixel of this node
-			int endI = currentLeaf.getEndPixel().getI(); //i index of endPixel of this node
-			int endJ = currentLeaf.getEndPixel().getJ(); //j index of endpixel of this node
+		for (int k = 0; k < index.count; k++) {
+			int startI = rects[4 * k];
+			int startJ = rects[4 * k + 1];
+			int endI = rects[4 * k + 2];
+			int endJ = rects[4 * k + 3];
 			
 			//if node is bigger than some amount, make it all black
-			if ((currentLeafHeight > EDGE_DETECTION_CONSTANT) && (currentLeafWidth > EDGE_DETECTION_CONSTANT)) {
-				for (int i = startI; i <= endI; i++) { //for every row in node
-					for (int j = startJ; j <= endJ; j++) { //for every col in node
-						temp[i][j] = new MyColor(0, 0, 0, i, j);
-					}
-				}
-			}
-
-			else { //if node small enough
-
-				//neighborhood
-				double w1 = edgeDetectionFilter[0][0];
-				double w2 = edgeDetectionFilter[1][0];
-				double w3 = edgeDetectionFilter[2][0];
-				double w4 = edgeDetectionFilter[0][1];
-				double w5 = edgeDetectionFilter[1][1];
-				double w6 = edgeDetectionFilter[2][1];
-				double w7 = edgeDetectionFilter[0][2];
-				double w8 = edgeDetectionFilter[1][2];
-				double w9 = edgeDetectionFilter[2][2];
-
-				double newRed = 0;
-				double newBlue = 0;
-				double newGreen = 0;
-
-				MyColor bottomLeft;
-				MyColor left;
-				MyColor topLeft;
-				MyColor bottom;
-				MyColor center;
-				MyColor top;
-				MyColor bottomRight;
-				MyColor right;
-				MyColor topRight;
-
-				if (currentLeafHeight == 1) {
-					MyColor curColor = currentLeaf.getStartPixel();
-					
-					int i = curColor.getI();
-					int j = curColor.getJ();
-					if (((i - 1) > 0) && ((i + 1) < newImageArr.length) && ((j - 1) > 0) && ((j + 1) < newImageArr[0].length)) {
-
-						topLeft = newImageArr[i - 1][j - 1];
-						left = newImageArr[i][j - 1];
-						bottomLeft = newImageArr[i + 1][j - 1];
-						top = newImageArr[i - 1][j];
-						center = newImageArr[i][j];
-						bottom = newImageArr[i + 1][j];
-						topRight = newImageArr[i - 1][j + 1];
-						right = newImageArr[i][j + 1];
-						bottomRight = newImageArr[i + 1][j + 1];
-						
-
-						newRed = Math.abs((topLeft.getR() * w1) + (top.getR() * w2) + (topRight.getR() * w3) + (left.getR() * w4) + (center.getR() * w5) + (right.getR() * w6) + (bottomLeft.getR() * w7) + (bottom.getR() * w8) + (bottomRight.getR() * w9));
-		
-						newGreen = Math.abs((topLeft.getG() * w1) + (top.getG() * w2) + (topRight.getG() * w3) + (left.getG() * w4) + (center.getG() * w5) + (right.getG() * w6) + (bottomLeft.getG() * w7) + (bottom.getG() * w8) + (bottomRight.getG() * w9));
-		
-						newBlue = Math.abs((topLeft.getB() * w1) + (top.getB() * w2) + (topRight.getB() * w3) + (left.getB() * w4) + (center.getB() * w5) + (right.getB() * w6) + (bottomLeft.getB() * w7) + (bottom.getB() * w8) + (bottomRight.getB() * w9));
-
-						if (newRed > 255) {
-							newRed = 255;
-						}
-						if (newGreen > 255) {
-							newGreen = 255;
-						}
-						if (newBlue > 255) {
-							newBlue = 255;
-						}
-						temp[i][j] = new MyColor((int) newRed, (int) newGreen, (int) newBlue, i, j);
-					}
-					else {
-						temp[i][j] = new MyColor((int) newRed, (int) newGreen, (int) newBlue, i, j);
-					}
-				}
-				
-				else if (currentLeafHeight == 2) {
-					for (int i = startI; i <= endI; i++) {
-						for (int j = startJ; j <= endJ; j++) {
-							if (((i - 1) > 0) && ((i + 1) < newImageArr.length) && ((j - 1) > 0) && ((j + 1) < newImageArr[0].length)) {
-
-								topLeft = newImageArr[i - 1][j - 1];
-								left = newImageArr[i][j - 1];
-								bottomLeft = newImageArr[i + 1][j - 1];
-								top = newImageArr[i - 1][j];
-								center = newImageArr[i][j];
-								bottom = newImageArr[i + 1][j];
-								topRight = newImageArr[i - 1][j + 1];
-								right = newImageArr[i][j + 1];
-								bottomRight = newImageArr[i + 1][j + 1];
-		
-								newRed = Math.abs((topLeft.getR() * w1) + (top.getR() * w2) + (topRight.getR() * w3) + (left.getR() * w4) + (center.getR() * w5) + (right.getR() * w6) + (bottomLeft.getR() * w7) + (bottom.getR() * w8) + (bottomRight.getR() * w9));
-				
-								newGreen = Math.abs((topLeft.getG() * w1) + (top.getG() * w2) + (topRight.getG() * w3) + (left.getG() * w4) + (center.getG() * w5) + (right.getG() * w6) + (bottomLeft.getG() * w7) + (bottom.getG() * w8) + (bottomRight.getG() * w9));
-				
-								newBlue = Math.abs((topLeft.getB() * w1) + (top.getB() * w2) + (topRight.getB() * w3) + (left.getB() * w4) + (center.getB() * w5) + (right.getB() * w6) + (bottomLeft.getB() * w7) + (bottom.getB() * w8) + (bottomRight.getB() * w9));
-		
-								if (newRed > 255) {
-									newRed = 255;
-								}
-								if (newGreen > 255) {
-									newGreen = 255;
-								}
-								if (newBlue > 255) {
-									newBlue = 255;
-								}
-								temp[i][j] = new MyColor((int) newRed, (int) newGreen, (int) newBlue, i, j);
-							}
-							else {
-								temp[i][j] = new MyColor((int) newRed, (int) newGreen, (int) newBlue, i, j);
-							}
-						}
-					}
-				}
-
-				else {
-					for (int i = startI; i <= endI; i++) {
-						for (int j = startJ; j <= endJ; j++) {
-							
-							if (((i - 1) > 0) && ((i + 1) < newImageArr.length) && ((j - 1) > 0) && ((j + 1) < newImageArr[0].length)) {
-								
-								topLeft = newImageArr[i - 1][j - 1];
-								left = newImageArr[i][j - 1];
-								bottomLeft = newImageArr[i + 1][j - 1];
-								top = newImageArr[i - 1][j];
-								center = newImageArr[i][j];
-								bottom = newImageArr[i + 1][j];
-								topRight = newImageArr[i - 1][j + 1];
-								right = newImageArr[i][j + 1];
-								bottomRight = newImageArr[i + 1][j + 1];
-								
-								newRed = Math.abs((topLeft.getR() * w1) + (top.getR() * w2) + (topRight.getR() * w3) + (left.getR() * w4) + (center.getR() * w5) + (right.getR() * w6) + (bottomLeft.getR() * w7) + (bottom.getR() * w8) + (bottomRight.getR() * w9));
-	
-								newGreen = Math.abs((topLeft.getG() * w1) + (top.getG() * w2) + (topRight.getG() * w3) + (left.getG() * w4) + (center.getG() * w5) + (right.getG() * w6) + (bottomLeft.getG() * w7) + (bottom.getG() * w8) + (bottomRight.getG() * w9));
-	
-								newBlue = Math.abs((topLeft.getB() * w1) + (top.getB() * w2) + (topRight.getB() * w3) + (left.getB() * w4) + (center.getB() * w5) + (right.getB() * w6) + (bottomLeft.getB() * w7) + (bottom.getB() * w8) + (bottomRight.getB() * w9));
-	
-								if (newRed > 255) {
-									newRed = 255;
-								}
-								if (newGreen > 255) {
-									newGreen = 255;
-								}
-								if (newBlue > 255) {
-									newBlue = 255;
-								}
-								temp[i][j] = new MyColor((int) newRed, (int) newGreen, (int) newBlue, i, j);
-							}
-							else {
-								temp[i][j] = new MyColor((int) newRed, (int) newGreen, (int) newBlue, i, j);
-							}
-						}
-					}
+			if ((endI - startI + 1 > EDGE_DETECTION_CONSTANT) && (endJ - startJ + 1 > EDGE_DETECTION_CONSTANT)) {
+				for (int i = startI; i <= endI; i++) {
+					Arrays.fill(temp, i * width + startJ, i * width + endJ + 1, 0);
 				}
 			}
 		}
 		return temp;
     }
-    
+
     /**
-     * returns list of every leaf in tree to iterate through + create Image
-     * @param root of subtree to get chilren of
-     * @param list of leaves to add leaves to
-     * @return ArrayList<Node> of leaves in tree (final call will return all leaves in tree)
+     * same result as edgeDetection, but uses the tree to skip work. Every leaf is one flat color, so a pixel whose
+     * whole neighborhood is inside its leaf always filters to the same value (black for zero-sum filters like
+     * Main.EDGE_DETECTION_FILTER). Leaf interiors are filled with that value in bulk and the filter only runs on the
+     * one pixel band around each leaf's edge, so cost follows total leaf perimeter instead of image area.
+     * Pays off on coarse trees of large images; on fine trees the dense rows of edgeDetection are faster.
+     * Every leaf must be drawn flat in newImageArr, e.g. no outlines drawn before filtering.
+     * @param edgeDetectionFilter 2d array of doubles to hold the color weights of every pixel
+     * @param newImageArr, packed pixels of image rendered from this tree to apply filter to
+     * @return packed pixels of original Image with edgeDetectionFilter applied
      */
-    private ArrayList<Node> getAllLeavesRec(Node root, ArrayList<Node> list) {
-		//base case
-		if (root == null) {
-			return list;
-		}
-		
-		//if root is leaf
-		if (root.isLeaf()) {
-			list.add(root); //add node to list of leaves
-		}
+    public int[] edgeDetectionSparse(double[][] edgeDetectionFilter, int[] newImageArr) {
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] temp = new int[newImageArr.length]; //starts all black
+		Convolution convolution = new Convolution(edgeDetectionFilter);
+		boolean zeroSum = convolution.isZeroSum(); //interiors already black
 		
-		//move to next nodes (called recursively)
-		list = getAllLeavesRec(root.getNW(), list);
-		list = getAllLeavesRec(root.getNE(), list);
-		list = getAllLeavesRec(root.getSW(), list);
-		list = getAllLeavesRec(root.getSE(), list);
+		Leaves index = getLeaves(); //every leaf, without walking the tree again
+		int[] rects = index.rects;
+
+		//leaves write to separate pixels, so they can be done in any order
+		IntStream.range(0, index.count).parallel().forEach(k -> {
+			int startI = rects[4 * k];
+			int startJ = rects[4 * k + 1];
+			int endI = rects[4 * k + 2];
+			int endJ = rects[4 * k + 3];
+			
+			//if node is bigger than some amount, leave it all black
+			if ((endI - startI + 1 > EDGE_DETECTION_CONSTANT) && (endJ - startJ + 1 > EDGE_DETECTION_CONSTANT)) {
+				return;
+			}
 
-		return list;
+			//interior: every neighbor is this leaf's color. Pixels on the image border are left for the band below
+			int innerTop = Math.max(startI + 1, 1);
+			int innerLeft = Math.max(startJ + 1, 1);
+			int innerBottom = Math.min(endI - 1, height - 2);
+			int innerRight = Math.min(endJ - 1, width - 2);
+			if (!zeroSum && innerTop <= innerBottom && innerLeft <= innerRight) {
+				int flat = convolution.applyFlat(newImageArr[startI * width + startJ] & 0xFFFFFF); //as rendered, marks dropped
+				for (int i = innerTop; i <= innerBottom; i++) {
+					Arrays.fill(temp, i * width + innerLeft, i * width + innerRight + 1, flat);
+				}
+			}
+
+			//band: top and bottom rows, then left and right cols between them
+			for (int j = startJ; j <= endJ; j++) {
+				temp[startI * width + j] = convolution.applyPixel(newImageArr, width, height, startI, j);
+				temp[endI * width + j] = convolution.applyPixel(newImageArr, width, height, endI, j);
+			}
+			for (int i = startI + 1; i < endI; i++) {
+				temp[i * width + startJ] = convolution.applyPixel(newImageArr, width, height, i, startJ);
+				temp[i * width + endJ] = convolution.applyPixel(newImageArr, width, height, i, endJ);
+			}
+		});
+		return temp;
     }
 }
@@ -0,0 +1,234 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: QuadtreeFile.java
+ * Desc:
+ *
+ * Binary container for a compressed Quadtree, so only the tree (not every pixel) is stored or sent
+ *
+ * Layout: "QTC1", int width, int height, byte flags (1 = payload is deflated), then the payload:
+ *   int number of split bits, int number of leaves,
+ *   split bits in preorder (NW, NE, SW, SE), one per node that is bigger than 1x1, 1 = divided, packed 8 to a byte,
+ *   red, green and blue of every leaf in preorder, each channel stored as the difference from the leaf before it
+ *   (neighboring leaves are close in color, so the differences are mostly small and deflate well)
+ *
+ */
+
+import java.io.*;
+import java.util.zip.*;
+
+public class QuadtreeFile {
+
+    public static final byte[] MAGIC = {'Q', 'T', 'C', '1'}; //first bytes of every quadtree file
+    public static final int FLAG_DEFLATE = 1; //payload is compressed with Deflater
+
+    /**
+     * collects split bits and leaf colors while a Quadtree walks itself in preorder
+     */
+    public static class Encoder {
+
+        private ByteArrayOutputStream splits = new ByteArrayOutputStream(); //split bits, 8 to a byte
+        private ByteArrayOutputStream reds = new ByteArrayOutputStream(); //red difference of each leaf
+        private ByteArrayOutputStream greens = new ByteArrayOutputStream(); //green difference of each leaf
+        private ByteArrayOutputStream blues = new ByteArrayOutputStream(); //blue difference of each leaf
+        private int currentByte; //split bits not yet written to splits
+        private int numSplitBits;
+        private int numLeaves;
+        private int lastColor; //color of previous leaf
+
+        /**
+         * record whether a node bigger than 1x1 is divided
+         */
+        public void writeSplit(boolean divided) {
+            if (divided) {
+                currentByte |= 1 << (7 - (numSplitBits & 7));
+            }
+            numSplitBits++;
+            if ((numSplitBits & 7) == 0) {
+                splits.write(currentByte);
+                currentByte = 0;
+            }
+        }
+
+        /**
+         * record the mean color of the next leaf
+         */
+        public void writeLeaf(int rgb) {
+            reds.write(MyColor.red(rgb) - MyColor.red(lastColor));
+            greens.write(MyColor.green(rgb) - MyColor.green(lastColor));
+            blues.write(MyColor.blue(rgb) - MyColor.blue(lastColor));
+            lastColor = rgb;
+            numLeaves++;
+        }
+
+        private void writePayload(DataOutputStream out) throws IOException {
+            if ((numSplitBits & 7) != 0) { //last partial byte
+                splits.write(currentByte);
+                currentByte = 0;
+                numSplitBits += 8 - (numSplitBits & 7); //padding bits are never read
+            }
+            out.writeInt(numSplitBits);
+            out.writeInt(numLeaves);
+            splits.writeTo(out);
+            reds.writeTo(out);
+            greens.writeTo(out);
+            blues.writeTo(out);
+        }
+    }
+
+    /**
+     * @return size in bytes of a quadtree file without deflate holding a tree with this many split bits and leaves
+     */
+    public static long rawSize(long numSplitBits, long numLeaves) {
+        return MAGIC.length + 4 + 4 + 1 //header
+            + 4 + 4 + (numSplitBits + 7) / 8 + 3 * numLeaves; //payload
+    }
+
+    /**
+     * write a tree, rendered at threshold t, to a quadtree file
+     * @param filename destination file
+     * @param tree tree to store
+     * @param t threshold to store the tree at (see Quadtree.getImage(double))
+     * @param deflate true to deflate the payload
+     * @throws IOException
+     */
+    public static void write(String filename, Quadtree<?> tree, double t, boolean deflate) throws IOException {
+        Encoder encoder = new Encoder();
+        tree.encode(encoder, t);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.write(MAGIC);
+            out.writeInt(tree.getWidth());
+            out.writeInt(tree.getHeight());
+            out.writeByte(deflate ? FLAG_DEFLATE : 0);
+            if (deflate) {
+                DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION));
+                DataOutputStream payload = new DataOutputStream(deflater);
+                encoder.writePayload(payload);
+                payload.flush();
+                deflater.finish();
+            }
+            else {
+                encoder.writePayload(out);
+            }
+        }
+    }
+
+    /**
+     * @return true if filename starts with MAGIC
+     */
+    public static boolean isQuadtreeFile(String filename) {
+        try (InputStream in = new FileInputStream(filename)) {
+            byte[] start = in.readNBytes(MAGIC.length);
+            return java.util.Arrays.equals(start, MAGIC);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * decode a quadtree file and render it, no tree is built
+     * @param filename quadtree file
+     * @return Image with every leaf filled with its mean color
+     * @throws IOException if file is not a quadtree file, ends early, or its sizes don't fit its image
+     */
+    public static Image read(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            byte[] start = new byte[MAGIC.length];
+            in.readFully(start);
+            if (!java.util.Arrays.equals(start, MAGIC)) {
+                throw new IOException(filename + " is not a quadtree file");
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            long pixels = (long) width * height;
+            if (width <= 0 || height <= 0 || pixels > Integer.MAX_VALUE - 8) {
+                throw new IOException(filename + " has an image of " + width + " x " + height + " pixels");
+            }
+            int flags = in.readUnsignedByte();
+            DataInputStream payload = in;
+            if ((flags & FLAG_DEFLATE) != 0) {
+                payload = new DataInputStream(new InflaterInputStream(in));
+            }
+            int numSplitBits = payload.readInt();
+            int numLeaves = payload.readInt();
+            //checked before anything is allocated: a tree over n pixels has at most n leaves and fewer than 2n nodes,
+            //and split bits are padded to a whole byte
+            if (numLeaves <= 0 || numLeaves > pixels) {
+                throw new IOException(filename + " has " + numLeaves + " leaves for " + pixels + " pixels");
+            }
+            if (numSplitBits < 0 || (numSplitBits & 7) != 0 || numSplitBits > 2 * pixels + 8) {
+                throw new IOException(filename + " has " + numSplitBits + " split bits for " + pixels + " pixels");
+            }
+            byte[] splits = new byte[numSplitBits / 8];
+            byte[] reds = new byte[numLeaves];
+            byte[] greens = new byte[numLeaves];
+            byte[] blues = new byte[numLeaves];
+            payload.readFully(splits);
+            payload.readFully(reds);
+            payload.readFully(greens);
+            payload.readFully(blues);
+
+            //undo differences, leaving absolute packed colors
+            int[] colors = new int[numLeaves];
+            int r = 0;
+            int g = 0;
+            int b = 0;
+            for (int k = 0; k < numLeaves; k++) {
+                r = (r + reds[k]) & 0xFF;
+                g = (g + greens[k]) & 0xFF;
+                b = (b + blues[k]) & 0xFF;
+                colors[k] = MyColor.pack(r, g, b);
+            }
+
+            Image image = new Image(width, height);
+            Decoder decoder = new Decoder(splits, colors, image);
+            decoder.decode(0, 0, height - 1, width - 1);
+            if (decoder.nextLeaf != numLeaves) {
+                throw new IOException(filename + " has " + numLeaves + " leaves but its tree uses " + decoder.nextLeaf);
+            }
+            return image;
+        }
+    }
+
+    /**
+     * replays split bits in preorder, dividing quadrants exactly as Quadtree.Node.divideNode does
+     */
+    private static class Decoder {
+
+        private byte[] splits;
+        private int[] colors;
+        private Image image;
+        private int nextSplit; //index of next split bit
+        private int nextLeaf; //index of next leaf color
+
+        public Decoder(byte[] splits, int[] colors, Image image) {
+            this.splits = splits;
+            this.colors = colors;
+            this.image = image;
+        }
+
+        public void decode(int startI, int startJ, int endI, int endJ) throws IOException {
+            boolean divided = false;
+            if (endI > startI && endJ > startJ) { //only nodes bigger than 1x1 have a split bit
+                if (nextSplit >= splits.length * 8) {
+                    throw new IOException("quadtree file ran out of split bits");
+                }
+                divided = ((splits[nextSplit >> 3] >> (7 - (nextSplit & 7))) & 1) == 1;
+                nextSplit++;
+            }
+            if (divided) {
+                int midI = ( (endI - startI) / 2) + startI;
+                int midJ = ( (endJ - startJ) / 2) + startJ;
+                decode(startI, startJ, midI, midJ); //NW
+                decode(startI, midJ + 1, midI, endJ); //NE
+                decode(midI + 1, startJ, endI, midJ); //SW
+                decode(midI + 1, midJ + 1, endI, endJ); //SE
+            }
+            else {
+                if (nextLeaf >= colors.length) {
+                    throw new IOException("quadtree file ran out of leaf colors");
+                }
+                image.fillRect(startI, startJ, endI, endJ, colors[nextLeaf++]);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: RenderPipeline.java
+ * Desc:
+ *
+ * Renders a Quadtree through a chain of stages declared once, e.g.
+ *     new RenderPipeline(quadtree).edgeDetection(Main.EDGE_DETECTION_FILTER).outline().render()
+ * Stages run in the order they are declared, the whole chain costs one pass over the leaves (Quadtree.getLeaves)
+ * and, with a filter, one sweep over the pixels, both into the one frame that is returned:
+ *  - color changes before the filter (transform, shade) run once per leaf as it is filled
+ *  - outlines before the filter are drawn as the leaf is filled, and get filtered like any other pixel
+ *  - the filter runs in place, row by row (Convolution.applyInPlace), or with sparse() only along leaf borders
+ *    (Quadtree.edgeDetectionSparse), which wins on coarse trees of large images
+ *  - leaves too big to have edges worth showing are marked as the leaf is filled and come out black, outlines
+ *    after the filter are marked the same way. Marks are kept in the unused top byte of the packed pixel, which
+ *    the filter ignores, and are cleared by the sweep
+ *  - color changes after the filter run per pixel in the same sweep
+ *
+ */
+
+import java.util.function.*;
+
+public class RenderPipeline {
+
+    private static final int BLACK_OUT = 1 << 24; //mark: pixel of a leaf too big to edge detect, filters to black
+    private static final int OUTLINE = 1 << 25; //mark: pixel of an outline drawn after the filter
+    private static final int MARKS = 0xFF000000;
+    private static final int RGB = 0xFFFFFF; //color bits, transforms may return anything above them
+
+    private Quadtree<?> quadtree;
+    private IntUnaryOperator leafOp = IntUnaryOperator.identity(); //color changes before the filter
+    private IntUnaryOperator pixelOp = IntUnaryOperator.identity(); //color changes after the filter
+    private IntUnaryOperator outlineOp = null; //color changes after the outline, null if there is no outline
+    private double[][] filter = null; //null if there is no filter
+    private boolean outlineFiltered; //outline declared before the filter
+    private boolean sparse = false; //filter along leaf borders only
+
+    /**
+     * @param quadtree tree to render
+     */
+    public RenderPipeline(Quadtree<?> quadtree) {
+        this.quadtree = quadtree;
+    }
+
+    /**
+     * change every color from here on with op
+     * @param op operation on packed colors, e.g. MyColor::greyScale
+     * @return this pipeline
+     */
+    public RenderPipeline transform(IntUnaryOperator op) {
+        if (filter == null) {
+            leafOp = leafOp.andThen(op);
+        }
+        else {
+            pixelOp = pixelOp.andThen(op);
+        }
+        if (outlineOp != null && outlineFiltered == (filter == null)) { //outline is on the same side of the filter
+            outlineOp = outlineOp.andThen(op);
+        }
+        return this;
+    }
+
+    /**
+     * shade or invert every color from here on, same as MyColor.shader
+     * @param shadeFactor -1 to invert, or between 0 and 1
+     * @return this pipeline
+     * @throws IllegalArgumentException if shadeFactor is not -1 or between 0 and 1
+     */
+    public RenderPipeline shade(double shadeFactor) throws IllegalArgumentException {
+        return transform(MyColor.shader(shadeFactor));
+    }
+
+    /**
+     * filter the render with a 3x3 filter, leaves bigger than Quadtree.EDGE_DETECTION_CONSTANT both ways come out black
+     * @param edgeDetectionFilter 3x3 weights, e.g. Main.EDGE_DETECTION_FILTER
+     * @return this pipeline
+     * @throws IllegalStateException if the pipeline already filters
+     */
+    public RenderPipeline edgeDetection(double[][] edgeDetectionFilter) throws IllegalStateException {
+        if (filter != null) {
+            throw new IllegalStateException("only one filter per pipeline");
+        }
+        filter = edgeDetectionFilter;
+        return this;
+    }
+
+    /**
+     * filter only the one pixel band along each leaf's border, filling leaf interiors in bulk, same pixels as the
+     * dense filter. Faster on coarse trees of large images, slower on fine trees. Ignored when an outline is drawn
+     * before the filter, since outlined leaves aren't flat
+     * @return this pipeline
+     */
+    public RenderPipeline sparse() {
+        sparse = true;
+        return this;
+    }
+
+    /**
+     * draw the border of every leaf in black, put through the color changes declared after it
+     * @return this pipeline
+     * @throws IllegalStateException if the pipeline already outlines
+     */
+    public RenderPipeline outline() throws IllegalStateException {
+        if (outlineOp != null) {
+            throw new IllegalStateException("only one outline per pipeline");
+        }
+        outlineOp = IntUnaryOperator.identity();
+        outlineFiltered = (filter == null);
+        return this;
+    }
+
+    /**
+     * @return Image, the tree rendered through every stage
+     */
+    public Image render() {
+        return render(null);
+    }
+
+    /**
+     * same as render(), timing the leaf walk as "render" and the filter sweep as "filter"
+     * @param instrumentation where to record phases, null to not record
+     * @return Image, the tree rendered through every stage
+     */
+    @SuppressWarnings("try")
+    public Image render(Instrumentation instrumentation) {
+        int width = quadtree.getWidth();
+        int height = quadtree.getHeight();
+        Image newImage = new Image(width, height);
+        int[] pixels = newImage.getPixels();
+        boolean filtering = (filter != null);
+        int big = quadtree.EDGE_DETECTION_CONSTANT;
+        boolean outlining = (outlineOp != null);
+        boolean marking = outlining && !outlineFiltered; //outlines after the filter would be filtered if drawn now
+        int outlineColor = outlining ? outlineOp.applyAsInt(0) & RGB : 0;
+
+        try (Instrumentation.Phase phase = (instrumentation == null) ? null : instrumentation.start("render")) {
+            Quadtree.Leaves leaves = quadtree.getLeaves(); //flat arrays, the tree itself isn't walked
+            int[] rects = leaves.rects;
+            for (int k = 0; k < leaves.count; k++) {
+                int startI = rects[4 * k];
+                int startJ = rects[4 * k + 1];
+                int endI = rects[4 * k + 2];
+                int endJ = rects[4 * k + 3];
+                int color = leafOp.applyAsInt(leaves.colors[k]) & RGB; //before marks go in
+                if (filtering && endI - startI + 1 > big && endJ - startJ + 1 > big) {
+                    color |= BLACK_OUT;
+                }
+                newImage.fillRect(startI, startJ, endI, endJ, color);
+                if (marking) {
+                    Quadtree.outlineRect(newImage, startI, startJ, endI, endJ, color | OUTLINE); //color still gets filtered
+                }
+                else if (outlining) { //keeps BLACK_OUT, or the outline of a big leaf would be filtered
+                    Quadtree.outlineRect(newImage, startI, startJ, endI, endJ, outlineColor | (color & BLACK_OUT));
+                }
+            }
+        }
+        if (!filtering) {
+            return newImage;
+        }
+
+        try (Instrumentation.Phase phase = (instrumentation == null) ? null : instrumentation.start("filter")) {
+            IntUnaryOperator after = pixelOp;
+            IntBinaryOperator finish = (rgb, filtered) -> {
+                if ((rgb & MARKS) == 0) {
+                    return after.applyAsInt(filtered) & RGB;
+                }
+                if ((rgb & OUTLINE) != 0) {
+                    return outlineColor;
+                }
+                return after.applyAsInt(0) & RGB; //BLACK_OUT
+            };
+            if (sparse && !(outlining && outlineFiltered)) {
+                int[] filtered = quadtree.edgeDetectionSparse(filter, pixels); //reads color bits only
+                for (int p = 0; p < pixels.length; p++) {
+                    pixels[p] = finish.applyAsInt(pixels[p], filtered[p]);
+                }
+            }
+            else {
+                new Convolution(filter).applyInPlace(pixels, width, height, finish);
+            }
+        }
+        return newImage;
+    }
+}
@@ -0,0 +1,240 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: SequenceProcessor.java
+ * Desc:
+ *
+ * Compresses a sequence of frames (e.g. rendered animation) into one delta stream
+ * One Quadtree is kept for the whole sequence. Each new frame is compared to the pixels the tree holds in
+ * TILE x TILE tiles, and only tiles where some channel moved by more than the tolerance are copied in and passed to
+ * Quadtree.update, so the rest of the tree, and its rendering, carries over unchanged from the frame before.
+ * The stream then gets only the leaves that changed, so the cost of a frame follows how much of the scene moved,
+ * not the resolution. Pixels within the tolerance are never copied, so no pixel drifts by more than it.
+ *
+ * Stream layout, deflated after the magic: "QTS1", int width, int height, then for each frame int numRecords and
+ * numRecords leaves of (int startI, int startJ, int endI, int endJ, 3 color bytes). The first frame holds every
+ * leaf; a decoder fills each record into the previous frame to get the next.
+ *
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class SequenceProcessor {
+
+    public static final byte[] MAGIC = {'Q', 'T', 'S', '1'}; //first bytes of every sequence file
+    public static final int TILE = 16; //side of tiles frames are compared in
+
+    private double threshold; //threshold for compression, notes in README
+    private int tolerance; //largest channel change, per pixel, that counts as unchanged
+    private Instrumentation instrumentation; //phases are recorded here
+
+    /**
+     * @param threshold threshold of the tree kept for the sequence
+     * @param tolerance largest channel change, per pixel, that counts as unchanged, 0 for exact
+     * @param instrumentation phases are recorded here
+     */
+    public SequenceProcessor(double threshold, int tolerance, Instrumentation instrumentation) {
+        this.threshold = threshold;
+        this.tolerance = tolerance;
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * leaf records of one frame, 5 ints each (startI, startJ, endI, endJ, rgb)
+     */
+    private static class Records implements Quadtree.LeafConsumer {
+        int[] data = new int[5 * 64];
+        int count;
+
+        public void accept(int startI, int startJ, int endI, int endJ, int rgb) {
+            if (5 * (count + 1) > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int at = 5 * count;
+            data[at] = startI;
+            data[at + 1] = startJ;
+            data[at + 2] = endI;
+            data[at + 3] = endJ;
+            data[at + 4] = rgb;
+            count++;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            for (int k = 0; k < 5 * count; k += 5) {
+                out.writeInt(data[k]);
+                out.writeInt(data[k + 1]);
+                out.writeInt(data[k + 2]);
+                out.writeInt(data[k + 3]);
+                out.writeByte(MyColor.red(data[k + 4]));
+                out.writeByte(MyColor.green(data[k + 4]));
+                out.writeByte(MyColor.blue(data[k + 4]));
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * compress frames, in order, into one delta stream
+     * @param frames frame filenames (PPM or anything Main.readImage reads), all the same size
+     * @param outputFilename delta stream to write
+     * @throws IOException if a frame can't be read or is a different size than the first
+     */
+    @SuppressWarnings("try")
+    public void encode(List<String> frames, String outputFilename) throws IOException {
+        if (frames.isEmpty()) {
+            throw new IOException("no frames to encode");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFilename)))) {
+            out.write(MAGIC);
+            out.flush();
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(out)));
+            Image kept; //pixels the tree was built from, changed tiles of each frame are copied in
+            try (Instrumentation.Phase phase = instrumentation.start("decode")) {
+                kept = Main.readImage(frames.get(0));
+            }
+            int width = kept.getWidth();
+            int height = kept.getHeight();
+            data.writeInt(width);
+            data.writeInt(height);
+
+            Quadtree<MyColor> quadtree;
+            try (Instrumentation.Phase phase = instrumentation.start("build")) {
+                quadtree = new Quadtree<MyColor>(kept, threshold);
+            }
+            instrumentation.recordTree(quadtree);
+            Records records = new Records();
+            try (Instrumentation.Phase phase = instrumentation.start("encode")) {
+                quadtree.forEachLeaf(0, 0, height - 1, width - 1, records);
+                records.writeTo(data);
+            }
+
+            for (int f = 1; f < frames.size(); f++) {
+                Image frame;
+                try (Instrumentation.Phase phase = instrumentation.start("decode")) {
+                    frame = Main.readImage(frames.get(f));
+                }
+                if (frame.getWidth() != width || frame.getHeight() != height) {
+                    throw new IOException(frames.get(f) + " is not the same size as the first frame");
+                }
+                List<int[]> dirty = new ArrayList<int[]>(); //areas whose render changed
+                try (Instrumentation.Phase phase = instrumentation.start("build")) {
+                    for (int top = 0; top < height; top += TILE) {
+                        int bottom = Math.min(top + TILE, height) - 1;
+                        //runs of changed tiles along this row of tiles go to the tree as one rectangle
+                        int runStart = -1;
+                        for (int left = 0; left < width + TILE; left += TILE) { //one step past the end closes the last run
+                            boolean changed = left < width && copyIfChanged(frame, kept, top, left, bottom, Math.min(left + TILE, width) - 1);
+                            if (changed && runStart < 0) {
+                                runStart = left;
+                            }
+                            else if (!changed && runStart >= 0) {
+                                int[] area = quadtree.update(top, runStart, bottom, Math.min(left, width) - 1);
+                                if (area != null) {
+                                    dirty.add(area);
+                                }
+                                runStart = -1;
+                            }
+                        }
+                    }
+                }
+                try (Instrumentation.Phase phase = instrumentation.start("encode")) {
+                    for (int[] area : dirty) {
+                        quadtree.forEachLeaf(area[0], area[1], area[2], area[3], records);
+                    }
+                    records.writeTo(data);
+                }
+            }
+            data.close();
+        }
+    }
+
+    /**
+     * copy the inclusive rectangle of frame into kept if any channel of any pixel in it moved by more than tolerance
+     * @return true if copied
+     */
+    private boolean copyIfChanged(Image frame, Image kept, int startI, int startJ, int endI, int endJ) {
+        int[] from = frame.getPixels();
+        int[] to = kept.getPixels();
+        int width = frame.getWidth();
+        for (int i = startI; i <= endI; i++) {
+            for (int p = i * width + startJ; p <= i * width + endJ; p++) {
+                int a = from[p];
+                int b = to[p];
+                if (a != b && (Math.abs(MyColor.red(a) - MyColor.red(b)) > tolerance
+                        || Math.abs(MyColor.green(a) - MyColor.green(b)) > tolerance
+                        || Math.abs(MyColor.blue(a) - MyColor.blue(b)) > tolerance)) {
+                    for (int row = startI; row <= endI; row++) {
+                        System.arraycopy(from, row * width + startJ, to, row * width + startJ, endJ - startJ + 1);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if filename starts with MAGIC
+     */
+    public static boolean isSequenceFile(String filename) {
+        try (InputStream in = new FileInputStream(filename)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * write every frame of a delta stream out as PPM, named outputFilename-1, outputFilename-2, ...
+     * @param filename delta stream
+     * @param outputFilename start of frame filenames
+     * @param binary true to write P6, false for P3
+     * @return number of frames written
+     * @throws IOException if the file is not a sequence file, can't be read, or a size or record doesn't fit the frame
+     */
+    public static int decode(String filename, String outputFilename, boolean binary) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename))) {
+            if (!Arrays.equals(in.readNBytes(MAGIC.length), MAGIC)) {
+                throw new IOException("not a quadtree sequence file");
+            }
+            DataInputStream data = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)));
+            int width = data.readInt();
+            int height = data.readInt();
+            long pixels = (long) width * height;
+            if (width <= 0 || height <= 0 || pixels > Integer.MAX_VALUE - 8) {
+                throw new IOException(filename + " has frames of " + width + " x " + height + " pixels");
+            }
+            Image frame = new Image(width, height);
+            int frames = 0;
+            while (true) {
+                int numRecords;
+                try {
+                    numRecords = data.readInt();
+                }
+                catch (EOFException e) {
+                    return frames;
+                }
+                if (numRecords < 0 || numRecords > pixels) { //a frame changes at most one leaf per pixel
+                    throw new IOException(filename + " has " + numRecords + " records in frame " + (frames + 1));
+                }
+                for (int k = 0; k < numRecords; k++) {
+                    int startI = data.readInt();
+                    int startJ = data.readInt();
+                    int endI = data.readInt();
+                    int endJ = data.readInt();
+                    int r = data.readUnsignedByte();
+                    int g = data.readUnsignedByte();
+                    int b = data.readUnsignedByte();
+                    if (startI < 0 || startJ < 0 || startI > endI || startJ > endJ || endI >= height || endJ >= width) {
+                        throw new IOException(filename + " has a record outside the frame: " + startI + "," + startJ + " to " + endI + "," + endJ);
+                    }
+                    frame.fillRect(startI, startJ, endI, endJ, MyColor.pack(r, g, b));
+                }
+                frames++;
+                Main.writeImg(outputFilename + "-" + frames, frame, binary);
+            }
+        }
+    }
+}
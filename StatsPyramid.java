@@ -0,0 +1,195 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: StatsPyramid.java
+ * Desc:
+ *
+ * Totals (red, green, blue, sum of squares) of every quadrant a Quadtree can have, built bottom up
+ * Level 0 is the whole image and each level splits every band of rows and every band of columns at its midpoint
+ * the way Node.divideNode does, so the cells of level k are exactly the quadrants at depth k, for any image size.
+ * The last level is single pixels. Each level is summed from the 2x2 (or 2x1, 1x1 where a band is one pixel wide)
+ * cells below it, starting from the pixels, so building costs one pass over the image plus a third of that for
+ * the levels above, all read and written in order. Compared to a SummedAreaTable the totals take about a third of
+ * the memory and a node's children sit next to each other, but only whole quadrants can be looked up.
+ *
+ */
+
+import java.util.*;
+
+public class StatsPyramid {
+
+    private Image image;
+    private int depth; //level of single pixels
+    private int[][] rowStarts; //rowStarts[level][k] = first row of band k, with height at the end
+    private int[][] colStarts; //same as rowStarts for columns, with width at the end
+    private int[][] rowChildren; //rowChildren[level][k] = band of level + 1 starting at rowStarts[level][k]
+    private int[][] colChildren; //same as rowChildren for columns
+    private long[][] sums; //sums[level][4 * (row * cols + col) + c], c = red, green, blue, squares; not kept for pixels
+
+    /**
+     * Sum the image up level by level
+     * @param image the image to sum over
+     */
+    public StatsPyramid(Image image) {
+        this.image = image;
+        int height = image.getHeight();
+        int width = image.getWidth();
+        this.depth = Math.max(levelsToSplit(height), levelsToSplit(width));
+        this.rowStarts = new int[depth + 1][];
+        this.colStarts = new int[depth + 1][];
+        this.rowChildren = new int[depth][];
+        this.colChildren = new int[depth][];
+        rowStarts[0] = new int[] {0, height};
+        colStarts[0] = new int[] {0, width};
+        for (int level = 0; level < depth; level++) {
+            rowChildren[level] = new int[rowStarts[level].length - 1];
+            colChildren[level] = new int[colStarts[level].length - 1];
+            rowStarts[level + 1] = split(rowStarts[level], rowChildren[level]);
+            colStarts[level + 1] = split(colStarts[level], colChildren[level]);
+        }
+
+        this.sums = new long[depth][];
+        for (int level = depth - 1; level >= 0; level--) {
+            sums[level] = new long[4 * (rowStarts[level].length - 1) * (colStarts[level].length - 1)];
+            if (level == depth - 1) {
+                sumPixels(level);
+            }
+            else {
+                sumLevel(level);
+            }
+        }
+    }
+
+    /**
+     * @return times a band of length pixels is split before every band is one pixel
+     */
+    private static int levelsToSplit(int length) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(length - 1, 0)); //ceil(log2(length))
+    }
+
+    /**
+     * split every band longer than one pixel at its midpoint, like divideNode
+     * @param starts band starts of one level, with the end at the end
+     * @param children filled with where each band's first half lands in the next level
+     * @return band starts of the next level, with the end at the end
+     */
+    private static int[] split(int[] starts, int[] children) {
+        int bands = starts.length - 1;
+        int[] next = new int[2 * bands + 1];
+        int count = 0;
+        for (int k = 0; k < bands; k++) {
+            int start = starts[k];
+            int end = starts[k + 1] - 1;
+            children[k] = count;
+            next[count++] = start;
+            if (end > start) {
+                next[count++] = ((end - start) / 2) + start + 1;
+            }
+        }
+        next[count] = starts[bands];
+        return Arrays.copyOf(next, count + 1);
+    }
+
+    /**
+     * fill the level just above the pixels straight from the image, one row of pixels at a time
+     */
+    private void sumPixels(int level) {
+        int[] pixels = image.getPixels();
+        int width = image.getWidth();
+        int cols = colStarts[level].length - 1;
+        int[] colOf = new int[width]; //cell column of each pixel column
+        for (int c = 0; c < cols; c++) {
+            for (int j = colStarts[level][c]; j < colStarts[level][c + 1]; j++) {
+                colOf[j] = c;
+            }
+        }
+        long[] cells = sums[level];
+        for (int r = 0; r < rowStarts[level].length - 1; r++) {
+            for (int i = rowStarts[level][r]; i < rowStarts[level][r + 1]; i++) {
+                int row = 4 * r * cols;
+                for (int j = 0; j < width; j++) {
+                    int rgb = pixels[i * width + j];
+                    long red = MyColor.red(rgb);
+                    long green = MyColor.green(rgb);
+                    long blue = MyColor.blue(rgb);
+                    int at = row + 4 * colOf[j];
+                    cells[at] += red;
+                    cells[at + 1] += green;
+                    cells[at + 2] += blue;
+                    cells[at + 3] += red * red + green * green + blue * blue;
+                }
+            }
+        }
+    }
+
+    /**
+     * fill a level from the level below it, each cell the total of the cells it splits into
+     */
+    private void sumLevel(int level) {
+        long[] cells = sums[level];
+        long[] below = sums[level + 1];
+        int rows = rowStarts[level].length - 1;
+        int cols = colStarts[level].length - 1;
+        int belowCols = colStarts[level + 1].length - 1;
+        for (int r = 0; r < rows; r++) {
+            int firstRow = rowChildren[level][r];
+            int lastRow = (r + 1 < rows) ? rowChildren[level][r + 1] - 1 : rowStarts[level + 1].length - 2;
+            for (int c = 0; c < cols; c++) {
+                int firstCol = colChildren[level][c];
+                int lastCol = (c + 1 < cols) ? colChildren[level][c + 1] - 1 : belowCols - 1;
+                int at = 4 * (r * cols + c);
+                for (int childRow = firstRow; childRow <= lastRow; childRow++) {
+                    for (int childCol = firstCol; childCol <= lastCol; childCol++) {
+                        int from = 4 * (childRow * belowCols + childCol);
+                        cells[at] += below[from];
+                        cells[at + 1] += below[from + 1];
+                        cells[at + 2] += below[from + 2];
+                        cells[at + 3] += below[from + 3];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return band of level + 1 holding the top rows of band row of level (the next band holds the bottom rows)
+     */
+    public int getChildRow(int level, int row) {
+        return rowChildren[level][row];
+    }
+    /**
+     * @return band of level + 1 holding the left columns of band col of level (the next band holds the right columns)
+     */
+    public int getChildCol(int level, int col) {
+        return colChildren[level][col];
+    }
+
+    /**
+     * returns packed mean color of cell (row, col) of level, the same as SummedAreaTable.getMeanColor of its rectangle
+     */
+    public int getMeanColor(int level, int row, int col) {
+        if (level == depth) {
+            return image.getRGB(rowStarts[level][row], colStarts[level][col]);
+        }
+        int cols = colStarts[level].length - 1;
+        long[] cells = sums[level];
+        int at = 4 * (row * cols + col);
+        return SummedAreaTable.meanColor(cells[at], cells[at + 1], cells[at + 2], area(level, row, col));
+    }
+
+    /**
+     * returns mean squared error of cell (row, col) of level against meanColor, the same as
+     * SummedAreaTable.getMeanSquaredError of its rectangle
+     */
+    public double getMeanSquaredError(int level, int row, int col, int meanColor) {
+        if (level == depth) {
+            return 0;
+        }
+        int cols = colStarts[level].length - 1;
+        long[] cells = sums[level];
+        int at = 4 * (row * cols + col);
+        return SummedAreaTable.meanSquaredError(cells[at], cells[at + 1], cells[at + 2], cells[at + 3], area(level, row, col), meanColor);
+    }
+
+    private long area(int level, int row, int col) {
+        return (long) (rowStarts[level][row + 1] - rowStarts[level][row]) * (colStarts[level][col + 1] - colStarts[level][col]);
+    }
+}
@@ -0,0 +1,299 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: SummedAreaTable.java
+ * Desc:
+ *
+ * Integral image (summed-area table) of an Image, built once so the sum and sum of squares
+ * of any rectangle of pixels can be found with four lookups instead of a full scan
+ *
+ * When pixels change, update() adds a patch: a small table of the changes over just the changed rectangle, so an
+ * edit costs its own area instead of rebuilding the table below and right of it. Queries add in every patch they
+ * overlap. Patches are merged when there are more than MAX_PATCHES, and the whole table is rebuilt once patches
+ * cover a quarter of the image, which keeps both queries and edits cheap.
+ *
+ */
+
+import java.util.*;
+
+public class SummedAreaTable {
+
+    public static final int MAX_PATCHES = 16; //patches kept before they are merged into one
+
+    private Image image; //image this table sums over
+    private int width; //width of image this table was built from
+    private int height; //height of image this table was built from
+    private long[] sumRed; //sumRed[(i+1)*(width+1) + (j+1)] = total red from (0,0) to (i,j)
+    private long[] sumGreen; //same as sumRed for green
+    private long[] sumBlue; //same as sumRed for blue
+    private long[] sumSquares; //same as sumRed for r^2 + g^2 + b^2 (error only needs the total over all channels)
+    private ArrayList<Patch> patches = new ArrayList<Patch>(); //changes since the table was built
+    private long patchArea; //pixels covered by patches, counting overlaps
+
+    /**
+     * summed-area tables of the change in each total over one rectangle of the image
+     */
+    private static class Patch {
+        int top; //inclusive bounds of rectangle
+        int left;
+        int bottom;
+        int right;
+        long[][] tables = new long[4][]; //red, green, blue, squares, laid out like sumRed over the rectangle only
+
+        Patch(int top, int left, int bottom, int right) {
+            this.top = top;
+            this.left = left;
+            this.bottom = bottom;
+            this.right = right;
+            int size = (bottom - top + 2) * (right - left + 2);
+            for (int c = 0; c < 4; c++) {
+                tables[c] = new long[size];
+            }
+        }
+
+        /**
+         * set the change of each total at pixel (i, j), before integrate
+         */
+        void set(int i, int j, long red, long green, long blue, long squares) {
+            int at = (i - top + 1) * (right - left + 2) + (j - left + 1);
+            tables[0][at] = red;
+            tables[1][at] = green;
+            tables[2][at] = blue;
+            tables[3][at] = squares;
+        }
+
+        /**
+         * turn the changes set at each pixel into running totals
+         */
+        void integrate() {
+            int stride = right - left + 2;
+            for (long[] table : tables) {
+                for (int i = 1; i <= bottom - top + 1; i++) {
+                    for (int j = 1; j < stride; j++) {
+                        table[i * stride + j] += table[(i - 1) * stride + j] + table[i * stride + j - 1] - table[(i - 1) * stride + j - 1];
+                    }
+                }
+            }
+        }
+
+        /**
+         * change in one total over the part of the inclusive rectangle that overlaps this patch
+         */
+        long sum(int channel, int startI, int startJ, int endI, int endJ) {
+            int sI = Math.max(startI, top) - top;
+            int sJ = Math.max(startJ, left) - left;
+            int eI = Math.min(endI, bottom) - top;
+            int eJ = Math.min(endJ, right) - left;
+            if (sI > eI || sJ > eJ) {
+                return 0;
+            }
+            long[] table = tables[channel];
+            int stride = right - left + 2;
+            return table[(eI + 1) * stride + eJ + 1] - table[sI * stride + eJ + 1]
+                - table[(eI + 1) * stride + sJ] + table[sI * stride + sJ];
+        }
+    }
+
+    /**
+     * Build the table with one pass over the image
+     * @param image the image to sum over
+     */
+    public SummedAreaTable(Image image) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        int stride = width + 1;
+        this.sumRed = new long[(height + 1) * stride];
+        this.sumGreen = new long[(height + 1) * stride];
+        this.sumBlue = new long[(height + 1) * stride];
+        this.sumSquares = new long[(height + 1) * stride];
+        build();
+    }
+
+    /**
+     * fill the tables from the image's current pixels
+     */
+    private void build() {
+        int stride = width + 1;
+        int[] pixels = image.getPixels();
+        for (int i = 0; i < height; i++) {
+            long rowRed = 0; //running totals of this row up to column j
+            long rowGreen = 0;
+            long rowBlue = 0;
+            long rowSquares = 0;
+            int above = i * stride; //row of table above this one
+            int here = (i + 1) * stride; //row of table for this image row
+            for (int j = 0; j < width; j++) {
+                int rgb = pixels[i * width + j];
+                long r = MyColor.red(rgb);
+                long g = MyColor.green(rgb);
+                long b = MyColor.blue(rgb);
+                rowRed += r;
+                rowGreen += g;
+                rowBlue += b;
+                rowSquares += r * r + g * g + b * b;
+                sumRed[here + j + 1] = sumRed[above + j + 1] + rowRed;
+                sumGreen[here + j + 1] = sumGreen[above + j + 1] + rowGreen;
+                sumBlue[here + j + 1] = sumBlue[above + j + 1] + rowBlue;
+                sumSquares[here + j + 1] = sumSquares[above + j + 1] + rowSquares;
+            }
+        }
+    }
+
+    /**
+     * bring the table up to date after pixels of the image in the inclusive rectangle (startI, startJ) to
+     * (endI, endJ) changed. Costs time proportional to the rectangle (times the patches it overlaps)
+     */
+    public void update(int startI, int startJ, int endI, int endJ) {
+        long area = (long) (endI - startI + 1) * (endJ - startJ + 1);
+        if (4 * (patchArea + area) > (long) width * height) { //patches would cover too much, start over
+            rebuild();
+            return;
+        }
+        Patch patch = new Patch(startI, startJ, endI, endJ);
+        for (int i = startI; i <= endI; i++) {
+            for (int j = startJ; j <= endJ; j++) {
+                //old values are what the table says now
+                long oldRed = getRedSum(i, j, i, j);
+                long oldGreen = getGreenSum(i, j, i, j);
+                long oldBlue = getBlueSum(i, j, i, j);
+                long oldSquares = getSquaresSum(i, j, i, j);
+                long r = image.getRed(i, j);
+                long g = image.getGreen(i, j);
+                long b = image.getBlue(i, j);
+                patch.set(i, j, r - oldRed, g - oldGreen, b - oldBlue, r * r + g * g + b * b - oldSquares);
+            }
+        }
+        patch.integrate();
+        patches.add(patch);
+        patchArea += area;
+        if (patches.size() > MAX_PATCHES) {
+            mergePatches();
+        }
+    }
+
+    /**
+     * replace every patch with one covering all of them
+     */
+    private void mergePatches() {
+        int top = height;
+        int left = width;
+        int bottom = 0;
+        int right = 0;
+        for (Patch patch : patches) {
+            top = Math.min(top, patch.top);
+            left = Math.min(left, patch.left);
+            bottom = Math.max(bottom, patch.bottom);
+            right = Math.max(right, patch.right);
+        }
+        long area = (long) (bottom - top + 1) * (right - left + 1);
+        if (4 * area > (long) width * height) {
+            rebuild();
+            return;
+        }
+        Patch merged = new Patch(top, left, bottom, right);
+        for (int i = top; i <= bottom; i++) {
+            for (int j = left; j <= right; j++) {
+                //change from what the tables held before any patch to the pixel now
+                long r = image.getRed(i, j);
+                long g = image.getGreen(i, j);
+                long b = image.getBlue(i, j);
+                merged.set(i, j, r - rectSum(sumRed, i, j, i, j), g - rectSum(sumGreen, i, j, i, j),
+                    b - rectSum(sumBlue, i, j, i, j), r * r + g * g + b * b - rectSum(sumSquares, i, j, i, j));
+            }
+        }
+        merged.integrate();
+        patches.clear();
+        patches.add(merged);
+        patchArea = area;
+    }
+
+    /**
+     * rebuild the tables from the image and drop every patch
+     */
+    public void rebuild() {
+        build();
+        patches.clear();
+        patchArea = 0;
+    }
+
+    /**
+     * returns the change in one total over the inclusive rectangle from every patch
+     */
+    private long patchSum(int channel, int startI, int startJ, int endI, int endJ) {
+        long sum = 0;
+        for (int p = 0; p < patches.size(); p++) {
+            sum += patches.get(p).sum(channel, startI, startJ, endI, endJ);
+        }
+        return sum;
+    }
+
+    /**
+     * returns the total of one table over the inclusive rectangle (startI, startJ) to (endI, endJ)
+     */
+    private long rectSum(long[] table, int startI, int startJ, int endI, int endJ) {
+        int stride = width + 1;
+        return table[(endI + 1) * stride + endJ + 1] - table[startI * stride + endJ + 1]
+            - table[(endI + 1) * stride + startJ] + table[startI * stride + startJ];
+    }
+
+    public long getRedSum(int startI, int startJ, int endI, int endJ) {
+        long sum = rectSum(sumRed, startI, startJ, endI, endJ);
+        return patches.isEmpty() ? sum : sum + patchSum(0, startI, startJ, endI, endJ);
+    }
+    public long getGreenSum(int startI, int startJ, int endI, int endJ) {
+        long sum = rectSum(sumGreen, startI, startJ, endI, endJ);
+        return patches.isEmpty() ? sum : sum + patchSum(1, startI, startJ, endI, endJ);
+    }
+    public long getBlueSum(int startI, int startJ, int endI, int endJ) {
+        long sum = rectSum(sumBlue, startI, startJ, endI, endJ);
+        return patches.isEmpty() ? sum : sum + patchSum(2, startI, startJ, endI, endJ);
+    }
+    public long getSquaresSum(int startI, int startJ, int endI, int endJ) {
+        long sum = rectSum(sumSquares, startI, startJ, endI, endJ);
+        return patches.isEmpty() ? sum : sum + patchSum(3, startI, startJ, endI, endJ);
+    }
+
+    /**
+     * returns packed mean color of the inclusive rectangle (startI, startJ) to (endI, endJ)
+     */
+    public int getMeanColor(int startI, int startJ, int endI, int endJ) {
+        long totalPixels = (long) (endI - startI + 1) * (endJ - startJ + 1);
+        return meanColor(getRedSum(startI, startJ, endI, endJ), getGreenSum(startI, startJ, endI, endJ),
+            getBlueSum(startI, startJ, endI, endJ), totalPixels);
+    }
+
+    /**
+     * returns mean squared error of the pixels in the inclusive rectangle (startI, startJ) to (endI, endJ)
+     * against meanColor, summed over the three channels
+     */
+    public double getMeanSquaredError(int startI, int startJ, int endI, int endJ, int meanColor) {
+        long totalPixels = (long) (endI - startI + 1) * (endJ - startJ + 1);
+        return meanSquaredError(getRedSum(startI, startJ, endI, endJ), getGreenSum(startI, startJ, endI, endJ),
+            getBlueSum(startI, startJ, endI, endJ), getSquaresSum(startI, startJ, endI, endJ), totalPixels, meanColor);
+    }
+
+    /**
+     * returns packed mean color of totalPixels pixels from their channel totals, also used by StatsPyramid so
+     * both give the same colors
+     */
+    public static int meanColor(long red, long green, long blue, long totalPixels) {
+        int meanRed = (int) (red / totalPixels); //average red val
+        int meanGreen = (int) (green / totalPixels); //average green val
+        int meanBlue = (int) (blue / totalPixels); //average blue val
+        return MyColor.pack(meanRed, meanGreen, meanBlue);
+    }
+
+    /**
+     * returns mean squared error of totalPixels pixels against meanColor from their channel totals and total of
+     * squares, summed over the three channels
+     */
+    public static double meanSquaredError(long red, long green, long blue, long squares, long totalPixels, int meanColor) {
+        long meanRed = MyColor.red(meanColor);
+        long meanGreen = MyColor.green(meanColor);
+        long meanBlue = MyColor.blue(meanColor);
+        //sum of (og - mean)^2 = sum(og^2) - 2*mean*sum(og) + n*mean^2, for each channel
+        long squaredError = squares;
+        squaredError -= 2 * (meanRed * red + meanGreen * green + meanBlue * blue);
+        squaredError += totalPixels * (meanRed * meanRed + meanGreen * meanGreen + meanBlue * meanBlue);
+        return (double) squaredError / totalPixels;
+    }
+}
@@ -0,0 +1,91 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: TiledProcessor.java
+ * Desc:
+ *
+ * Compresses images too big for the heap by streaming them through in bands of rows
+ * Each band is cut into square tiles, each tile gets its own Quadtree, and the rendered band is written out before
+ * the next band is read, so memory use depends on the image width and tile size, never on the image height.
+ *
+ * Quadtree splits every node into quadrants, so on a square image with a power of 2 side the tiles are exactly
+ * the nodes a whole-image tree has at that depth, and output matches the whole-image tree wherever that tree
+ * divides down to tile size, which every useful threshold does on large images. On any other image the
+ * whole-image tree splits off-grid, so tiled output differs from Main -c: leaves end at tile edges instead.
+ *
+ */
+
+import java.io.*;
+
+public class TiledProcessor {
+
+    public static final int MAX_TILE_SIZE = 1 << 15; //largest tile whose pixels fit one array
+
+    /**
+     * render several compression levels of a PPM file, one tile at a time
+     * @param inputFilename PPM file to compress
+     * @param outputFilenames one output file per threshold
+     * @param thresholds thresholds to render at
+     * @param tileSize width and height of each tile, a power of 2 up to MAX_TILE_SIZE
+     * @param outline true to outline the leaves of each level
+     * @param binary true to write P6, false for P3
+     * @throws IOException if the file can't be read, or a band of tileSize rows doesn't fit one array
+     * @throws IllegalArgumentException if tileSize is not a power of 2 up to MAX_TILE_SIZE
+     */
+    public static void compress(String inputFilename, String[] outputFilenames, double[] thresholds, int tileSize, boolean outline, boolean binary) throws IOException {
+        if (tileSize < 1 || tileSize > MAX_TILE_SIZE || Integer.bitCount(tileSize) != 1) {
+            throw new IllegalArgumentException("tileSize must be a power of 2 up to " + MAX_TILE_SIZE + "!");
+        }
+        double minLevel = thresholds[0]; //one tree per tile built with smallest threshold renders every level
+        for (int k = 1; k < thresholds.length; k++) {
+            minLevel = Math.min(minLevel, thresholds[k]);
+        }
+
+        try (PpmReader reader = new PpmReader(inputFilename)) {
+            int width = reader.getWidth();
+            int height = reader.getHeight();
+            long bandSize = (long) width * Math.min(tileSize, height); //no band is taller than the image
+            if (bandSize > Integer.MAX_VALUE - 8) { //before any output is created
+                throw new IOException(inputFilename + " is " + width + " pixels wide, too wide for bands of " + tileSize + " rows");
+            }
+            PpmWriter[] writers = new PpmWriter[thresholds.length];
+            try {
+                for (int k = 0; k < thresholds.length; k++) {
+                    writers[k] = new PpmWriter(outputFilenames[k], width, height, binary);
+                }
+
+                int[] band = new int[(int) bandSize]; //rows of input being processed
+                int[][] outBands = new int[thresholds.length][(int) bandSize]; //rendered rows of each level
+                for (int bandStart = 0; bandStart < height; bandStart += tileSize) {
+                    int rows = Math.min(tileSize, height - bandStart);
+                    reader.readRows(band, 0, rows);
+
+                    for (int tileStart = 0; tileStart < width; tileStart += tileSize) {
+                        int cols = Math.min(tileSize, width - tileStart);
+                        Image tile = new Image(cols, rows);
+                        for (int i = 0; i < rows; i++) {
+                            System.arraycopy(band, i * width + tileStart, tile.getPixels(), i * cols, cols);
+                        }
+
+                        Quadtree<MyColor> quadtree = new Quadtree<MyColor>(tile, minLevel);
+                        Image[] levels = outline ? quadtree.getImagesOutlined(thresholds) : quadtree.getImages(thresholds);
+                        for (int k = 0; k < thresholds.length; k++) {
+                            for (int i = 0; i < rows; i++) {
+                                System.arraycopy(levels[k].getPixels(), i * cols, outBands[k], i * width + tileStart, cols);
+                            }
+                        }
+                    }
+
+                    for (int k = 0; k < thresholds.length; k++) {
+                        writers[k].writeRows(outBands[k], 0, rows);
+                    }
+                }
+            }
+            finally {
+                for (int k = 0; k < writers.length; k++) {
+                    if (writers[k] != null) {
+                        writers[k].close();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: VectorKernels.java
+ * Desc:
+ *
+ * Kernels with the Vector API (jdk.incubator.vector), one channel value per lane, the widest lanes the CPU has
+ * (8 ints with AVX2). Every loop does whole vectors, then the last few pixels one at a time.
+ * Needs --add-modules jdk.incubator.vector to compile and to run; without it Kernels.get() never loads this class.
+ *
+ */
+
+import jdk.incubator.vector.*;
+
+public class VectorKernels extends Kernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int SHADE_BITS = 22; //fraction bits of shade multipliers, 255 << 22 still fits in an int
+
+    /**
+     * @throws UnsupportedOperationException if the CPU has no vectors worth using, Kernels.get() then uses Kernels
+     */
+    public VectorKernels() {
+        if (INTS.length() < 4) {
+            throw new UnsupportedOperationException("vectors too narrow");
+        }
+    }
+
+    public String getName() {
+        return "vector " + INTS.vectorBitSize() + "-bit";
+    }
+
+    public void unpack(int[] src, int at, int[] red, int[] green, int[] blue) {
+        int x = 0;
+        for (int end = INTS.loopBound(red.length); x < end; x += INTS.length()) {
+            IntVector rgb = IntVector.fromArray(INTS, src, at + x);
+            rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF).intoArray(red, x);
+            rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF).intoArray(green, x);
+            rgb.and(0xFF).intoArray(blue, x);
+        }
+        for (; x < red.length; x++) {
+            int rgb = src[at + x];
+            red[x] = MyColor.red(rgb);
+            green[x] = MyColor.green(rgb);
+            blue[x] = MyColor.blue(rgb);
+        }
+    }
+
+    public void pack(int[] red, int[] green, int[] blue, int[] dest, int at, int n) {
+        int x = 0;
+        for (int end = INTS.loopBound(n); x < end; x += INTS.length()) {
+            IntVector r = IntVector.fromArray(INTS, red, x);
+            IntVector g = IntVector.fromArray(INTS, green, x);
+            IntVector b = IntVector.fromArray(INTS, blue, x);
+            r.lanewise(VectorOperators.LSHL, 16).or(g.lanewise(VectorOperators.LSHL, 8)).or(b).intoArray(dest, at + x);
+        }
+        for (; x < n; x++) {
+            dest[at + x] = MyColor.pack(red[x], green[x], blue[x]);
+        }
+    }
+
+    public void filterInt(int[] a, int[] h, int[] b, int[] out, int[] w) {
+        int w1 = w[0], w2 = w[1], w3 = w[2];
+        int w4 = w[3], w5 = w[4], w6 = w[5];
+        int w7 = w[6], w8 = w[7], w9 = w[8];
+        int x = 0;
+        for (int end = INTS.loopBound(out.length); x < end; x += INTS.length()) {
+            //neighbors at x, x + 1 and x + 2 are three overlapping loads of the same row
+            IntVector sum = IntVector.fromArray(INTS, a, x).mul(w1)
+                .add(IntVector.fromArray(INTS, a, x + 1).mul(w2))
+                .add(IntVector.fromArray(INTS, a, x + 2).mul(w3))
+                .add(IntVector.fromArray(INTS, h, x).mul(w4))
+                .add(IntVector.fromArray(INTS, h, x + 1).mul(w5))
+                .add(IntVector.fromArray(INTS, h, x + 2).mul(w6))
+                .add(IntVector.fromArray(INTS, b, x).mul(w7))
+                .add(IntVector.fromArray(INTS, b, x + 1).mul(w8))
+                .add(IntVector.fromArray(INTS, b, x + 2).mul(w9));
+            sum.abs().min(255).intoArray(out, x);
+        }
+        for (; x < out.length; x++) {
+            int sum = a[x] * w1 + a[x + 1] * w2 + a[x + 2] * w3
+                + h[x] * w4 + h[x + 1] * w5 + h[x + 2] * w6
+                + b[x] * w7 + b[x + 1] * w8 + b[x + 2] * w9;
+            out[x] = Math.min(Math.abs(sum), 255);
+        }
+    }
+
+    public void shade(int[] pixels, int from, int to, double shadeFactor) {
+        if (shadeFactor == -1) {
+            invert(pixels, from, to);
+            return;
+        }
+        int multiplier = shadeMultiplier(shadeFactor);
+        if (multiplier < 0) {
+            super.shade(pixels, from, to, shadeFactor);
+            return;
+        }
+        scale(pixels, from, to, multiplier);
+    }
+
+    /**
+     * (int) (channel * shadeFactor) as (channel * multiplier) >> SHADE_BITS, all in int lanes. Checked against
+     * every channel value so it gives the same pixels as MyColor.shade
+     * @return multiplier, -1 if no multiplier matches (rare, those factors are shaded one pixel at a time)
+     */
+    private static int shadeMultiplier(double shadeFactor) {
+        int guess = (int) (shadeFactor * (1 << SHADE_BITS));
+        for (int multiplier = Math.max(guess - 2, 0); multiplier <= guess + 2; multiplier++) {
+            boolean matches = true;
+            for (int c = 0; c < 256 && matches; c++) {
+                matches = (c * multiplier) >> SHADE_BITS == (int) (c * shadeFactor);
+            }
+            if (matches) {
+                return multiplier;
+            }
+        }
+        return -1;
+    }
+
+    private static void invert(int[] pixels, int from, int to) {
+        int p = from;
+        for (int end = from + INTS.loopBound(to - from); p < end; p += INTS.length()) {
+            IntVector.fromArray(INTS, pixels, p).lanewise(VectorOperators.XOR, 0xFFFFFF).intoArray(pixels, p);
+        }
+        for (; p < to; p++) {
+            pixels[p] = MyColor.negative(pixels[p]);
+        }
+    }
+
+    private static void scale(int[] pixels, int from, int to, int multiplier) {
+        int p = from;
+        for (int end = from + INTS.loopBound(to - from); p < end; p += INTS.length()) {
+            IntVector rgb = IntVector.fromArray(INTS, pixels, p);
+            IntVector r = rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF).mul(multiplier).lanewise(VectorOperators.LSHR, SHADE_BITS);
+            IntVector g = rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF).mul(multiplier).lanewise(VectorOperators.LSHR, SHADE_BITS);
+            IntVector b = rgb.and(0xFF).mul(multiplier).lanewise(VectorOperators.LSHR, SHADE_BITS);
+            r.lanewise(VectorOperators.LSHL, 16).or(g.lanewise(VectorOperators.LSHL, 8)).or(b).intoArray(pixels, p);
+        }
+        for (; p < to; p++) {
+            int rgb = pixels[p];
+            pixels[p] = MyColor.pack((MyColor.red(rgb) * multiplier) >> SHADE_BITS,
+                (MyColor.green(rgb) * multiplier) >> SHADE_BITS, (MyColor.blue(rgb) * multiplier) >> SHADE_BITS);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: BenchmarkMain.java
+ * Desc:
+ *
+ * Runs the benchmarks with JMH's usual command line options, always with the GC profiler on so allocation rate
+ * (gc.alloc.rate and gc.alloc.rate.norm, bytes per call) is reported next to each time
+ *
+ */
+
+package bench;
+
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        Options options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
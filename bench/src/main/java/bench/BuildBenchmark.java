@@ -0,0 +1,43 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: BuildBenchmark.java
+ * Desc:
+ *
+ * Benchmark of building a Quadtree at each compression level, the only benchmark the threshold changes much
+ * Trees are built the way Main builds them, with Main.PARALLEL_CUTOFF.
+ *
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class BuildBenchmark {
+
+    @Param({"256", "1024", "4096", "8192"})
+    int size;
+
+    @Param({"noise", "gradient", "flat"})
+    String pattern;
+
+    @Param({"0.002", "0.004", "0.01", "0.033", "0.077", "0.2", "0.5", "0.75"}) //Main.COMPRESSION_LEVELS
+    double threshold;
+
+    private Object image;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        image = SyntheticImages.image(pattern, size);
+    }
+
+    @Benchmark
+    public Object build() throws Throwable {
+        return Targets.NEW_QUADTREE.invoke(image, threshold, Targets.PARALLEL_CUTOFF);
+    }
+}
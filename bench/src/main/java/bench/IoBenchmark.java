@@ -0,0 +1,70 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: IoBenchmark.java
+ * Desc:
+ *
+ * Benchmarks of Main.read and Main.writeImg on P3 and P6 files in a temporary directory
+ *
+ */
+
+package bench;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g"})
+public class IoBenchmark {
+
+    @Param({"256", "1024", "4096", "8192"})
+    int size;
+
+    @Param({"noise", "gradient", "flat"})
+    String pattern;
+
+    @Param({"false", "true"})
+    boolean binary; //P6 if true, P3 if false
+
+    private Path dir;
+    private String input; //file read by read()
+    private String output; //file overwritten by writeImg()
+    private Object image;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        dir = Files.createTempDirectory("quadtree-bench");
+        input = dir.resolve("in.ppm").toString();
+        output = dir.resolve("out.ppm").toString();
+        image = SyntheticImages.image(pattern, size);
+        Targets.WRITE_IMG.invoke(input, image, binary);
+        //what was written has to read back as the same pixels, or read() would be timing a failure
+        int[] written = (int[]) Targets.GET_PIXELS.invoke(image);
+        int[] readBack = (int[]) Targets.GET_PIXELS.invoke(Targets.READ.invoke(input));
+        if (!Arrays.equals(written, readBack)) {
+            throw new IllegalStateException((binary ? "P6" : "P3") + " file did not read back as the image written");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Paths.get(input));
+        Files.deleteIfExists(Paths.get(output));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public Object read() throws Throwable {
+        return Targets.READ.invoke(input);
+    }
+
+    @Benchmark
+    public void writeImg() throws Throwable {
+        Targets.WRITE_IMG.invoke(output, image, binary);
+    }
+}
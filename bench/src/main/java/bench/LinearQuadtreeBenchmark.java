@@ -0,0 +1,71 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: LinearQuadtreeBenchmark.java
+ * Desc:
+ *
+ * Benchmarks of LinearQuadtree next to Quadtree on the same images, building and rendering
+ * LinearQuadtree builds on one thread, so Quadtree is built on one thread here too (parallel cutoff
+ * Integer.MAX_VALUE) and the build times compare the trees, not the thread counts. Both are built at
+ * Main.COMPRESSION_EDGE_DETECTION, the level edge detection renders from.
+ *
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class LinearQuadtreeBenchmark {
+
+    @Param({"256", "1024", "4096", "8192"})
+    int size;
+
+    @Param({"noise", "gradient", "flat"})
+    String pattern;
+
+    private Object image;
+    private Object quadtree; //built once per trial for the render benchmarks
+    private Object linearQuadtree; //same
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        image = SyntheticImages.image(pattern, size);
+        quadtree = Targets.NEW_QUADTREE.invoke(image, Targets.COMPRESSION_EDGE_DETECTION, Integer.MAX_VALUE);
+        linearQuadtree = Targets.NEW_LINEAR_QUADTREE.invoke(image, Targets.COMPRESSION_EDGE_DETECTION);
+    }
+
+    @Benchmark
+    public Object quadtreeBuild() throws Throwable {
+        return Targets.NEW_QUADTREE.invoke(image, Targets.COMPRESSION_EDGE_DETECTION, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public Object linearBuild() throws Throwable {
+        return Targets.NEW_LINEAR_QUADTREE.invoke(image, Targets.COMPRESSION_EDGE_DETECTION);
+    }
+
+    @Benchmark
+    public Object quadtreeGetImage() throws Throwable {
+        return Targets.GET_IMAGE.invoke(quadtree);
+    }
+
+    @Benchmark
+    public Object linearGetImage() throws Throwable {
+        return Targets.LINEAR_GET_IMAGE.invoke(linearQuadtree);
+    }
+
+    @Benchmark
+    public Object quadtreeEdgeDetectedOutlined() throws Throwable {
+        return Targets.GET_IMAGE_EDGE_DETECTED_OUTLINED.invoke(quadtree, Targets.EDGE_DETECTION_FILTER);
+    }
+
+    @Benchmark
+    public Object linearEdgeDetectedOutlined() throws Throwable {
+        return Targets.LINEAR_GET_IMAGE_EDGE_DETECTED_OUTLINED.invoke(linearQuadtree, Targets.EDGE_DETECTION_FILTER);
+    }
+}
@@ -0,0 +1,64 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: QuadtreeBenchmark.java
+ * Desc:
+ *
+ * Benchmarks of everything rendered from a Quadtree, see BuildBenchmark for building one
+ * Every tree is built once per trial the way Main builds it for edge detection, at Main.COMPRESSION_EDGE_DETECTION
+ * with Main.PARALLEL_CUTOFF, so these run size x pattern cases and not one per compression level.
+ *
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class QuadtreeBenchmark {
+
+    @Param({"256", "1024", "4096", "8192"})
+    int size;
+
+    @Param({"noise", "gradient", "flat"})
+    String pattern;
+
+    private Object quadtree; //built once per trial
+    private int[] rendered; //getImage() pixels, input of edgeDetection and edgeDetectionSparse
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        Object image = SyntheticImages.image(pattern, size);
+        quadtree = Targets.NEW_QUADTREE.invoke(image, Targets.COMPRESSION_EDGE_DETECTION, Targets.PARALLEL_CUTOFF);
+        rendered = (int[]) Targets.GET_PIXELS.invoke(Targets.GET_IMAGE.invoke(quadtree));
+    }
+
+    @Benchmark
+    public Object getImage() throws Throwable {
+        return Targets.GET_IMAGE.invoke(quadtree);
+    }
+
+    @Benchmark
+    public Object getImageOutlined() throws Throwable {
+        return Targets.GET_IMAGE_OUTLINED.invoke(quadtree);
+    }
+
+    @Benchmark
+    public Object edgeDetection() throws Throwable {
+        return Targets.EDGE_DETECTION.invoke(quadtree, Targets.EDGE_DETECTION_FILTER, rendered);
+    }
+
+    @Benchmark
+    public Object edgeDetectionSparse() throws Throwable {
+        return Targets.EDGE_DETECTION_SPARSE.invoke(quadtree, Targets.EDGE_DETECTION_FILTER, rendered);
+    }
+
+    @Benchmark
+    public Object getImageEdgeDetectedOutlined() throws Throwable {
+        return Targets.GET_IMAGE_EDGE_DETECTED_OUTLINED.invoke(quadtree, Targets.EDGE_DETECTION_FILTER);
+    }
+}
@@ -0,0 +1,45 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: ShadeBenchmark.java
+ * Desc:
+ *
+ * Benchmark of Image.shade, which changes the image in place
+ * Shading costs the same whatever the pixel values are, so the same image is shaded again every call
+ * (and -1, inverting, just flips it back and forth).
+ *
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+public class ShadeBenchmark {
+
+    @Param({"256", "1024", "4096", "8192"})
+    int size;
+
+    @Param({"noise", "gradient", "flat"})
+    String pattern;
+
+    @Param({"-1", "0.5"})
+    double shadeFactor;
+
+    private Object image;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        image = SyntheticImages.image(pattern, size);
+    }
+
+    @Benchmark
+    public Object shade() throws Throwable {
+        Targets.SHADE.invoke(image, shadeFactor);
+        return image;
+    }
+}
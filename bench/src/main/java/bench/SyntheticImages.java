@@ -0,0 +1,87 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: SyntheticImages.java
+ * Desc:
+ *
+ * Generated test images, so benchmarks need no input files and every run sees the same pixels
+ * The patterns cover the extremes of how a Quadtree splits:
+ *   noise: every pixel random, the tree divides down to single pixels at any useful threshold
+ *   gradient: smooth color ramps, the tree divides evenly to a depth set by the threshold
+ *   flat: rectangles of one color each, most of the tree stops early and only their edges divide deeply
+ *
+ */
+
+package bench;
+
+import java.util.*;
+
+final class SyntheticImages {
+
+    private static final long SEED = 42;
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * @param pattern "noise", "gradient" or "flat"
+     * @param size width and height
+     * @return packed 0xRRGGBB pixels, row-major
+     */
+    static int[] pixels(String pattern, int size) {
+        switch (pattern) {
+            case "noise":
+                return noise(size);
+            case "gradient":
+                return gradient(size);
+            case "flat":
+                return flat(size);
+            default:
+                throw new IllegalArgumentException("unknown pattern " + pattern);
+        }
+    }
+
+    /**
+     * @return new Image of the given pattern
+     */
+    static Object image(String pattern, int size) throws Throwable {
+        return Targets.NEW_IMAGE.invoke(pixels(pattern, size), size, size);
+    }
+
+    private static int[] noise(int size) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[size * size];
+        for (int p = 0; p < pixels.length; p++) {
+            pixels[p] = random.nextInt(1 << 24);
+        }
+        return pixels;
+    }
+
+    private static int[] gradient(int size) {
+        int[] pixels = new int[size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int r = j * 255 / (size - 1);
+                int g = i * 255 / (size - 1);
+                int b = (i + j) * 255 / (2 * size - 2);
+                pixels[i * size + j] = (r << 16) | (g << 8) | b;
+            }
+        }
+        return pixels;
+    }
+
+    private static int[] flat(int size) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[size * size];
+        //64 rectangles at random places and sizes, later ones on top, not lined up with quadrants
+        for (int k = 0; k < 64; k++) {
+            int top = random.nextInt(size);
+            int left = random.nextInt(size);
+            int bottom = Math.min(size, top + 1 + random.nextInt(size / 2));
+            int right = Math.min(size, left + 1 + random.nextInt(size / 2));
+            int rgb = random.nextInt(1 << 24);
+            for (int i = top; i < bottom; i++) {
+                Arrays.fill(pixels, i * size + left, i * size + right, rgb);
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,88 @@
+/* Name: Clara Fee, Julia Rieger
+ * File: Targets.java
+ * Desc:
+ *
+ * Entry points of the program for the benchmarks
+ * The program lives in the default package, which can't be imported from a named package, and JMH only runs
+ * benchmarks in a named package, so each entry point is looked up once here as a MethodHandle. The handles are
+ * static final, so the JIT inlines through them like a direct call.
+ *
+ */
+
+package bench;
+
+import java.lang.invoke.*;
+
+final class Targets {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> IMAGE = load("Image");
+    private static final Class<?> QUADTREE = load("Quadtree");
+    private static final Class<?> LINEAR_QUADTREE = load("LinearQuadtree");
+
+    static final MethodHandle NEW_IMAGE = constructor(IMAGE, int[].class, int.class, int.class);
+    static final MethodHandle GET_PIXELS = virtual(IMAGE, "getPixels", int[].class);
+    static final MethodHandle SHADE = virtual(IMAGE, "shade", void.class, double.class);
+    static final MethodHandle READ = staticMethod(load("Main"), "readImage", IMAGE, String.class); //throws, Main.read would exit
+    static final MethodHandle WRITE_IMG = staticMethod(load("Main"), "writeImg", void.class, String.class, IMAGE, boolean.class);
+    static final MethodHandle NEW_QUADTREE = constructor(QUADTREE, IMAGE, double.class, int.class);
+    static final MethodHandle GET_IMAGE = virtual(QUADTREE, "getImage", IMAGE);
+    static final MethodHandle GET_IMAGE_OUTLINED = virtual(QUADTREE, "getImageOutlined", IMAGE);
+    static final MethodHandle EDGE_DETECTION = virtual(QUADTREE, "edgeDetection", int[].class, double[][].class, int[].class);
+    static final MethodHandle EDGE_DETECTION_SPARSE = virtual(QUADTREE, "edgeDetectionSparse", int[].class, double[][].class, int[].class);
+    static final MethodHandle GET_IMAGE_EDGE_DETECTED_OUTLINED = virtual(QUADTREE, "getImageEdgeDetectedOutlined", IMAGE, double[][].class);
+    static final MethodHandle NEW_LINEAR_QUADTREE = constructor(LINEAR_QUADTREE, IMAGE, double.class);
+    static final MethodHandle LINEAR_GET_IMAGE = virtual(LINEAR_QUADTREE, "getImage", IMAGE);
+    static final MethodHandle LINEAR_GET_IMAGE_EDGE_DETECTED_OUTLINED = virtual(LINEAR_QUADTREE, "getImageEdgeDetectedOutlined", IMAGE, double[][].class);
+    static final int PARALLEL_CUTOFF = (int) constant("PARALLEL_CUTOFF");
+    static final double[][] EDGE_DETECTION_FILTER = (double[][]) constant("EDGE_DETECTION_FILTER");
+    static final double COMPRESSION_EDGE_DETECTION = (double) constant("COMPRESSION_EDGE_DETECTION");
+
+    private Targets() {
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        }
+        catch (ClassNotFoundException e) {
+            throw new IllegalStateException("program classes not on classpath, run mvn install first", e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> c, Class<?>... params) {
+        try {
+            return LOOKUP.findConstructor(c, MethodType.methodType(void.class, params));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> c, String name, Class<?> returns, Class<?>... params) {
+        try {
+            return LOOKUP.findVirtual(c, name, MethodType.methodType(returns, params));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> c, String name, Class<?> returns, Class<?>... params) {
+        try {
+            return LOOKUP.findStatic(c, name, MethodType.methodType(returns, params));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object constant(String name) {
+        try {
+            return load("Main").getField(name).get(null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}